@@ -0,0 +1,75 @@
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Supplier;
+
+// The operations the benchmarks in spartie.jmh time. JMH does not take benchmarks in the default package, and a class
+// in a package cannot name the interpreter's classes, which are all in the default package, so each benchmark builds
+// its operation here through spartie.jmh.Targets. Every method does the setup and returns what is timed.
+public final class BenchmarkTargets {
+    private BenchmarkTargets() {
+    }
+
+    // Print statements go nowhere, so what is timed is the interpreter and not the terminal
+    private static final class NullSink implements OutputSink {
+        @Override
+        public void println(String line) {
+        }
+
+        @Override
+        public void println(double value) {
+        }
+
+        @Override
+        public void flush() {
+        }
+    }
+
+    public static Supplier<Object> scan(String source) {
+        return () -> new SpartieScanner(source).scanBuffer();
+    }
+
+    // Scanning into a list of Token objects, the list the scanner also offers
+    public static Supplier<Object> scanTokens(String source) {
+        return () -> new SpartieScanner(source).scan();
+    }
+
+    // The tokens are scanned once here
+    public static Supplier<Object> parse(String source) {
+        TokenBuffer tokens = new SpartieScanner(source).scanBuffer();
+        return () -> new SpartieParser(tokens).parse();
+    }
+
+    // A thousand reads of a double and of an object through depth enclosing environments
+    public static Supplier<Object> lookup(Integer depth) {
+        Environment environment = new Environment();
+        environment.defineDouble(0, 1);
+        environment.define(1, "value");
+        for (int i = 0; i < depth; i++) {
+            environment = new Environment(environment, 2);
+        }
+        Environment innermost = environment;
+        return () -> {
+            double sum = 0;
+            for (int i = 0; i < 1000; i++) {
+                sum += innermost.getDouble(depth, 0);
+                if (innermost.get(depth, 1) == null) sum++;
+            }
+            return sum;
+        };
+    }
+
+    // Parsed, optimized and resolved once, then run by a new interpreter every operation. Print statements either go
+    // nowhere or through a BufferedOutputSink to nowhere.
+    public static Supplier<Object> program(String source, Boolean buffered) {
+        OutputSink output = buffered ? new BufferedOutputSink(OutputStream.nullOutputStream(), StandardCharsets.UTF_8) : new NullSink();
+        List<Statement> statements = new SpartieOptimizer().optimize(new SpartieParser(new SpartieScanner(source).scanBuffer()).parse());
+        new SpartieResolver().resolve(statements);
+        return () -> {
+            SpartieRuntime.setOutput(output);
+            new SpartieInterpreter().run(statements);
+            output.flush();
+            return statements;
+        };
+    }
+}
@@ -0,0 +1,57 @@
+package spartie.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Parsing tokens scanned in the setup, of one deeply nested expression and of one long flat chain of operators
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseBenchmark {
+    private Supplier<Object> deep;
+    private Supplier<Object> wide;
+
+    @Setup
+    public void setup() {
+        deep = Targets.get("parse", deepExpression(500));
+        wide = Targets.get("parse", wideExpression(20000));
+    }
+
+    @Benchmark
+    public Object deep() {
+        return deep.get();
+    }
+
+    @Benchmark
+    public Object wide() {
+        return wide.get();
+    }
+
+    // print ((((1 + 1) + 1) ...) + 1); nested depth times
+    private static String deepExpression(int depth) {
+        return "print " + "(".repeat(depth) + "1" + " + 1)".repeat(depth) + ";\n";
+    }
+
+    // print a + b * c - ... with terms terms
+    private static String wideExpression(int terms) {
+        StringBuilder source = new StringBuilder("var a = 1;\nprint a");
+        String[] operators = { " + ", " * ", " - ", " / " };
+        for (int i = 1; i < terms; i++) {
+            source.append(operators[i % operators.length]).append("a");
+        }
+        return source.append(";\n").toString();
+    }
+}
@@ -0,0 +1,80 @@
+package spartie.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Whole programs on the tree interpreter, resolved in the setup and run by a new interpreter every operation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ProgramBenchmark {
+    private static final String ARITHMETIC = """
+            var sum = 0;
+            for (var i = 0; i < 100000; i = i + 1) {
+                sum = sum + i * 2 - i / 3;
+            }
+            """;
+
+    private static final String CONCAT = """
+            var text = "";
+            var i = 0;
+            while (i < 2000) {
+                text = "a" + i;
+                text = text + "b" + text;
+                i = i + 1;
+            }
+            """;
+
+    private static final String PRINT = """
+            for (var i = 0; i < 100000; i = i + 1) {
+                print i;
+                print "line";
+            }
+            """;
+
+    private Supplier<Object> arithmetic;
+    private Supplier<Object> concat;
+    private Supplier<Object> printNullSink;
+    private Supplier<Object> printBuffered;
+
+    @Setup
+    public void setup() {
+        arithmetic = Targets.get("program", ARITHMETIC, false);
+        concat = Targets.get("program", CONCAT, false);
+        printNullSink = Targets.get("program", PRINT, false);
+        printBuffered = Targets.get("program", PRINT, true);
+    }
+
+    @Benchmark
+    public Object arithmetic() {
+        return arithmetic.get();
+    }
+
+    @Benchmark
+    public Object concat() {
+        return concat.get();
+    }
+
+    @Benchmark
+    public Object printNullSink() {
+        return printNullSink.get();
+    }
+
+    @Benchmark
+    public Object printBuffered() {
+        return printBuffered.get();
+    }
+}
@@ -0,0 +1,55 @@
+package spartie.jmh;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Tokenizing a source of about size characters made of the statements a typical script is made of
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ScanBenchmark {
+    @Param({ "1024", "131072", "8388608" })
+    public int size;
+
+    private Supplier<Object> scan;
+
+    @Setup
+    public void setup() {
+        scan = Targets.get("scan", syntheticSource(size));
+    }
+
+    @Benchmark
+    public Object scan() {
+        return scan.get();
+    }
+
+    private static String syntheticSource(int size) {
+        String[] statements = {
+                "var total = 0;\n",
+                "for (var i = 0; i < 10; i = i + 1) {\n  total = total + i * 2.5;\n}\n",
+                "if (total >= 100 & total != 3) {\n  print \"big\";\n} else {\n  print total;\n}\n",
+                "// a comment line\n",
+                "var name = \"spartie\" + total;\n",
+                "while (total > 0) { total = total - 10; }\n",
+        };
+        StringBuilder source = new StringBuilder(size + 100);
+        for (int i = 0; source.length() < size; i++) {
+            source.append(statements[i % statements.length]);
+        }
+        return source.toString();
+    }
+}
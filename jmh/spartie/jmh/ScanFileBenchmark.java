@@ -0,0 +1,44 @@
+package spartie.jmh;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Tokenizing a script from disk into Token objects. The file is relative to the directory JMH runs in, the root of the
+// project under gradle jmh, and any other can be given with -p file=path.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 10, time = 500, timeUnit = TimeUnit.MILLISECONDS)
+@Fork(1)
+@State(Scope.Thread)
+public class ScanFileBenchmark {
+    @Param({ "source.sprty" })
+    public String file;
+
+    private Supplier<Object> scan;
+
+    @Setup
+    public void setup() throws IOException {
+        scan = Targets.get("scanTokens", new String(Files.readAllBytes(Paths.get(file)), Charset.defaultCharset()));
+    }
+
+    @Benchmark
+    public Object scan() {
+        return scan.get();
+    }
+}
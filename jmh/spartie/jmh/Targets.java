@@ -0,0 +1,28 @@
+package spartie.jmh;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+// Reaches BenchmarkTargets, which code in a package can only find by name
+final class Targets {
+    private Targets() {
+    }
+
+    // The operation the method of BenchmarkTargets with this name builds from the arguments
+    @SuppressWarnings("unchecked")
+    static Supplier<Object> get(String name, Object... arguments) {
+        try {
+            for (Method method : Class.forName("BenchmarkTargets").getMethods()) {
+                if (method.getName().equals(name)) {
+                    return (Supplier<Object>) method.invoke(null, arguments);
+                }
+            }
+            throw new IllegalArgumentException("No benchmark target " + name);
+        } catch (ClassNotFoundException | IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.List;
+
+// Prints the statement tree as indented s-expressions, one statement per line, so two trees can be compared with diff
+public class AstPrinter {
+    private final StringBuilder builder = new StringBuilder();
+
+    public String print(List<Statement> statements) {
+        for (Statement statement : statements) {
+            print(statement, 0);
+        }
+        return builder.toString();
+    }
+
+    private void print(Statement statement, int indent) {
+        builder.append("  ".repeat(indent));
+
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> builder.append("(print ").append(print(printStatement.expression)).append(")\n");
+            case Statement.ExpressionStatement expressionStatement -> builder.append("(expr ").append(print(expressionStatement.expression)).append(")\n");
+            case Statement.VariableStatement variableStatement -> {
+                builder.append("(var ").append(variableStatement.name.text);
+                if (variableStatement.initializer != null) {
+                    builder.append(" ").append(print(variableStatement.initializer));
+                }
+                builder.append(")\n");
+            }
+            case Statement.BlockStatement blockStatement -> {
+                builder.append("(block\n");
+                for (Statement inner : blockStatement.statements) {
+                    print(inner, indent + 1);
+                }
+                builder.append("  ".repeat(indent)).append(")\n");
+            }
+            case Statement.IfStatement ifStatement -> {
+                builder.append("(if ").append(print(ifStatement.condition)).append("\n");
+                print(ifStatement.thenBranch, indent + 1);
+                if (ifStatement.elseBranch != null) {
+                    builder.append("  ".repeat(indent)).append("else\n");
+                    print(ifStatement.elseBranch, indent + 1);
+                }
+                builder.append("  ".repeat(indent)).append(")\n");
+            }
+            case Statement.WhileStatement whileStatement -> {
+                builder.append("(while ").append(print(whileStatement.condition)).append("\n");
+                print(whileStatement.body, indent + 1);
+                builder.append("  ".repeat(indent)).append(")\n");
+            }
+            case Statement.ForStatement forStatement -> {
+                builder.append("(for");
+                if (forStatement.countedLoop != null) {
+                    builder.append(" counted");
+                }
+                builder.append("\n");
+                if (forStatement.initializer != null) {
+                    print(forStatement.initializer, indent + 1);
+                }
+                builder.append("  ".repeat(indent + 1)).append(print(forStatement.condition)).append("\n");
+                if (forStatement.increment != null) {
+                    builder.append("  ".repeat(indent + 1)).append(print(forStatement.increment)).append("\n");
+                }
+                print(forStatement.body, indent + 1);
+                builder.append("  ".repeat(indent)).append(")\n");
+            }
+            case Statement.FunctionStatement functionStatement -> {
+                builder.append("(fun ").append(functionStatement.name.text).append(" (");
+                for (int i = 0; i < functionStatement.parameters.size(); i++) {
+                    builder.append(i > 0 ? " " : "").append(functionStatement.parameters.get(i).text);
+                }
+                builder.append(")\n");
+                for (Statement inner : functionStatement.body) {
+                    print(inner, indent + 1);
+                }
+                builder.append("  ".repeat(indent)).append(")\n");
+            }
+            case Statement.ReturnStatement returnStatement -> {
+                builder.append("(return");
+                if (returnStatement.value != null) {
+                    builder.append(" ").append(print(returnStatement.value));
+                }
+                builder.append(")\n");
+            }
+            case null, default -> builder.append("()\n");
+        };
+    }
+
+    private String print(Expression expression) {
+        return switch (expression) {
+            case Expression.LogicalExpression logicalExpression ->
+                    "(" + logicalExpression.operator.text + " " + print(logicalExpression.left) + " " + print(logicalExpression.right) + ")";
+            case Expression.AssignmentExpression assignmentExpression ->
+                    "(= " + assignmentExpression.name.text + " " + print(assignmentExpression.value) + ")";
+            case Expression.VariableExpression variableExpression -> variableExpression.name.text;
+            case Expression.LiteralExpression literalExpression -> literal(literalExpression.literalValue);
+            case Expression.ParenthesesExpression parenthesesExpression -> "(group " + print(parenthesesExpression.expression) + ")";
+            case Expression.HoistedExpression hoistedExpression ->
+                    "(hoisted " + hoistedExpression.index + " " + print(hoistedExpression.expression) + ")";
+            case Expression.UnaryExpression unaryExpression ->
+                    "(" + unaryExpression.operator.text + " " + print(unaryExpression.right) + ")";
+            case Expression.BinaryExpression binaryExpression ->
+                    "(" + binaryExpression.operator.text + " " + print(binaryExpression.left) + " " + print(binaryExpression.right) + ")";
+            case Expression.CallExpression callExpression -> {
+                StringBuilder call = new StringBuilder("(call ").append(callExpression.name.text);
+                for (Expression argument : callExpression.arguments) {
+                    call.append(" ").append(print(argument));
+                }
+                yield call.append(")").toString();
+            }
+            case null, default -> "?";
+        };
+    }
+
+    private static String literal(Object value) {
+        if (value instanceof String string) {
+            return "\"" + string + "\"";
+        }
+        return String.valueOf(value);
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+// Batches printed lines like BufferedOutputSink, but hands each full batch to a background thread that does the
+// writing, so the program only blocks on output when it gets several batches ahead of the terminal
+public class AsyncOutputSink implements OutputSink {
+    // Full batches waiting for the writer. Bounded, so a program that prints faster than the output can be written
+    // is held back instead of filling the heap.
+    private static final int QUEUED_BATCHES = 8;
+
+    private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+    private final StringBuilder batch = new StringBuilder(BufferedOutputSink.BATCH_SIZE + 1024);
+    private final Writer writer;
+
+    // Set by the writer thread when writing fails, reported to the program on the next flush
+    private volatile IOException failure = null;
+
+    public AsyncOutputSink(OutputStream stream, Charset charset) {
+        this.writer = new OutputStreamWriter(SpartieMetrics.counted(stream), charset);
+
+        // A daemon, so a program that exits without flushing is not kept alive by its output
+        Thread thread = new Thread(this::drain, "spartie-output");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void println(String line) {
+        batch.append(line).append(BufferedOutputSink.LINE_SEPARATOR);
+        if (batch.length() >= BufferedOutputSink.BATCH_SIZE) {
+            handOff();
+        }
+    }
+
+    @Override
+    public void println(double value) {
+        batch.append(value).append(BufferedOutputSink.LINE_SEPARATOR);
+        if (batch.length() >= BufferedOutputSink.BATCH_SIZE) {
+            handOff();
+        }
+    }
+
+    // Waits until everything printed so far has been written
+    @Override
+    public void flush() {
+        handOff();
+
+        CountDownLatch written = new CountDownLatch(1);
+        put(written);
+        try {
+            written.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure != null) {
+            throw new UncheckedIOException(failure);
+        }
+    }
+
+    private void handOff() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        put(batch.toString());
+        batch.setLength(0);
+    }
+
+    private void put(Object item) {
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread. Queued batches are written back to back and the stream is flushed once the queue runs dry or
+    // the program asks for it.
+    private void drain() {
+        while (true) {
+            Object item;
+            try {
+                item = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            // After a failure the remaining output is dropped, like PrintStream does
+            if (failure == null) {
+                try {
+                    if (item instanceof String text) {
+                        writer.write(text);
+                    }
+                    if (item instanceof CountDownLatch || queue.isEmpty()) {
+                        writer.flush();
+                    }
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+
+            if (item instanceof CountDownLatch written) {
+                written.countDown();
+            }
+        }
+    }
+}
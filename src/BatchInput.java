@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+// Starting values for a batch run, read from a comma separated file. The first line names the variables and every
+// other line is one row: the values those variables hold when the program starts. A value is a number, true, false,
+// null, or else a string, optionally in double quotes. Values cannot contain commas.
+public class BatchInput {
+    public final List<String> names;
+    public final List<Object[]> rows;
+
+    private BatchInput(List<String> names, List<Object[]> rows) {
+        this.names = names;
+        this.rows = rows;
+    }
+
+    public static BatchInput read(Path path) throws IOException {
+        List<String> lines = Files.readAllLines(path, Charset.defaultCharset());
+        if (lines.isEmpty()) {
+            throw new IllegalArgumentException("Batch input " + path + " has no header");
+        }
+
+        List<String> names = new ArrayList<>();
+        for (String field : lines.getFirst().split(",", -1)) {
+            String name = field.trim();
+            if (!name.matches("[a-zA-Z]+")) {
+                throw new IllegalArgumentException("Invalid variable name '" + name + "' in batch input");
+            }
+            names.add(name);
+        }
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 1; i < lines.size(); i++) {
+            if (lines.get(i).isBlank()) {
+                continue;
+            }
+
+            String[] fields = lines.get(i).split(",", -1);
+            if (fields.length != names.size()) {
+                throw new IllegalArgumentException("Line " + (i + 1) + " of batch input has " + fields.length
+                        + " values, expected " + names.size());
+            }
+
+            Object[] row = new Object[fields.length];
+            for (int j = 0; j < fields.length; j++) {
+                row[j] = value(fields[j].trim());
+            }
+            rows.add(row);
+        }
+
+        return new BatchInput(names, rows);
+    }
+
+    private static Object value(String field) {
+        switch (field) {
+            case "null": return null;
+            case "true": return true;
+            case "false": return false;
+        }
+        if (field.length() >= 2 && field.startsWith("\"") && field.endsWith("\"")) {
+            return field.substring(1, field.length() - 1);
+        }
+
+        try {
+            return Double.parseDouble(field);
+        } catch (NumberFormatException e) {
+            return field;
+        }
+    }
+}
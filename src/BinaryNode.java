@@ -0,0 +1,178 @@
+// Executable form of a BinaryExpression on boxed operands. Every site starts Uninitialized and, on its first
+// execution, replaces itself in its BinaryExpression with a node specialized to the operand types it saw. A
+// specialized node keeps a single cheap guard; when the guard fails the site is rewritten to Generic for good, so a
+// site changes at most twice and monomorphic sites never walk the full chain of type checks in SpartieRuntime.
+abstract class BinaryNode {
+    protected final Expression.BinaryExpression site;
+
+    BinaryNode(Expression.BinaryExpression site) {
+        this.site = site;
+    }
+
+    abstract Object execute(Object left, Object right);
+
+    // Swap this node for another in the expression that owns it and let the new node produce the result
+    protected Object replace(BinaryNode node, Object left, Object right) {
+        site.node = node;
+        return node.execute(left, right);
+    }
+
+    // The types seen so far no longer hold, fall back to handling everything
+    protected Object deoptimize(Object left, Object right) {
+        return replace(new Generic(site), left, right);
+    }
+
+    static class Uninitialized extends BinaryNode {
+        Uninitialized(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            return replace(specialize(left, right), left, right);
+        }
+
+        private BinaryNode specialize(Object left, Object right) {
+            TokenType operator = site.operator.type;
+
+            if (left instanceof Double && right instanceof Double) {
+                return switch (operator) {
+                    case ADD -> new DoubleAdd(site);
+                    case SUBTRACT -> new DoubleSubtract(site);
+                    case MULTIPLY -> new DoubleMultiply(site);
+                    case DIVIDE -> new DoubleDivide(site);
+                    case LESS_THAN -> new DoubleLessThan(site);
+                    case LESS_EQUAL -> new DoubleLessEqual(site);
+                    case GREATER_THAN -> new DoubleGreaterThan(site);
+                    case GREATER_EQUAL -> new DoubleGreaterEqual(site);
+                    default -> new Generic(site);
+                };
+            }
+            if (operator == TokenType.ADD && left instanceof CharSequence && right instanceof CharSequence) {
+                return new StringConcat(site);
+            }
+
+            return new Generic(site);
+        }
+    }
+
+    static class DoubleAdd extends BinaryNode {
+        DoubleAdd(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l + r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleSubtract extends BinaryNode {
+        DoubleSubtract(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l - r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleMultiply extends BinaryNode {
+        DoubleMultiply(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l * r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleDivide extends BinaryNode {
+        DoubleDivide(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l / r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleLessThan extends BinaryNode {
+        DoubleLessThan(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l < r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleLessEqual extends BinaryNode {
+        DoubleLessEqual(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l <= r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleGreaterThan extends BinaryNode {
+        DoubleGreaterThan(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l > r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class DoubleGreaterEqual extends BinaryNode {
+        DoubleGreaterEqual(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof Double l && right instanceof Double r) return l >= r;
+            return deoptimize(left, right);
+        }
+    }
+
+    static class StringConcat extends BinaryNode {
+        StringConcat(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            if (left instanceof CharSequence l && right instanceof CharSequence r) return Rope.concat(l, r);
+            return deoptimize(left, right);
+        }
+    }
+
+    // Handles every combination of types, including reporting the errors
+    static class Generic extends BinaryNode {
+        Generic(Expression.BinaryExpression site) {
+            super(site);
+        }
+
+        @Override
+        Object execute(Object left, Object right) {
+            return SpartieRuntime.binary(site.operator, left, right);
+        }
+    }
+}
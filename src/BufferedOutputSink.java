@@ -0,0 +1,56 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+// Collects printed lines in memory and writes them out in large batches, so a print is a few appends to a
+// StringBuilder instead of a synchronized write and flush on System.out
+public class BufferedOutputSink implements OutputSink {
+    static final int BATCH_SIZE = 1 << 16;
+    static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final StringBuilder batch = new StringBuilder(BATCH_SIZE + 1024);
+    private final Writer writer;
+
+    public BufferedOutputSink(OutputStream stream, Charset charset) {
+        this.writer = new OutputStreamWriter(SpartieMetrics.counted(stream), charset);
+    }
+
+    @Override
+    public void println(String line) {
+        batch.append(line).append(LINE_SEPARATOR);
+        if (batch.length() >= BATCH_SIZE) {
+            write();
+        }
+    }
+
+    @Override
+    public void println(double value) {
+        // Appended without going through a String, with the same digits as Double.toString
+        batch.append(value).append(LINE_SEPARATOR);
+        if (batch.length() >= BATCH_SIZE) {
+            write();
+        }
+    }
+
+    @Override
+    public void flush() {
+        write();
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void write() {
+        try {
+            writer.append(batch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        batch.setLength(0);
+    }
+}
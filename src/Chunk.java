@@ -0,0 +1,16 @@
+// Compiled form of a program, produced by the SpartieCompiler and run by the SpartieVM
+public class Chunk {
+    public final int[] code;
+    public final Object[] constants;
+    public final double[] numbers;
+    public final int localCount;
+    public final int maxStack;
+
+    public Chunk(int[] code, Object[] constants, double[] numbers, int localCount, int maxStack) {
+        this.code = code;
+        this.constants = constants;
+        this.numbers = numbers;
+        this.localCount = localCount;
+        this.maxStack = maxStack;
+    }
+}
@@ -0,0 +1,382 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Just enough of the JVM class file format to hold static methods without arguments and static fields. Classes are
+// written as version 49 (Java 5), the last version the verifier accepts without StackMapTable frames, so branches only
+// need their offsets patched. A method is started while another is still being written, which goes on once the new
+// one ends.
+public class ClassFileWriter {
+    // Opcodes used by the SpartieClassCompiler
+    static final int
+            ICONST_0 = 0x03, ICONST_1 = 0x04, DCONST_0 = 0x0e, DCONST_1 = 0x0f,
+            LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14,
+            ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19,
+            ISTORE = 0x36, DSTORE = 0x39, ASTORE = 0x3a,
+            POP = 0x57, POP2 = 0x58, DUP = 0x59, DUP2 = 0x5c,
+            DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77, IXOR = 0x82,
+            DCMPL = 0x97, DCMPG = 0x98,
+            IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e,
+            IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0,
+            GOTO = 0xa7, RETURN = 0xb1,
+            GETSTATIC = 0xb2, PUTSTATIC = 0xb3,
+            INVOKEVIRTUAL = 0xb6, INVOKESTATIC = 0xb8;
+
+    // Thrown when a method or the class outgrows what a class file can express
+    static class LimitExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LimitExceeded(String message) {
+            super(message);
+        }
+    }
+
+    // Jump target within the method, branches to it are patched once it is placed
+    static class Label {
+        private int position = -1;
+        private final List<Integer> branches = new ArrayList<>();
+    }
+
+    private final String className;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    // A static method with no arguments that returns nothing
+    private static class Method {
+        final String name;
+        byte[] code = new byte[1024];
+        int length = 0;
+        int stack = 0;
+        int maxStack = 0;
+        int maxLocals = 0;
+
+        Method(String name) {
+            this.name = name;
+        }
+    }
+
+    private record Field(String name, String descriptor) {}
+
+    // The method being written, and the ones it interrupted, innermost last
+    private Method method;
+    private final List<Method> interrupted = new ArrayList<>();
+    private final List<Method> methods = new ArrayList<>();
+    private final List<Field> fields = new ArrayList<>();
+
+    public ClassFileWriter(String className) {
+        this.className = className;
+    }
+
+    // Methods
+
+    // Code emitted from now on goes into the named method, until endMethod
+    void startMethod(String name) {
+        if (method != null) {
+            interrupted.add(method);
+        }
+        method = new Method(name);
+    }
+
+    // Code emitted from now on goes back into the method that startMethod interrupted
+    void endMethod() {
+        if (method.length > 65535) {
+            throw new LimitExceeded("Method too large");
+        }
+        methods.add(method);
+        method = interrupted.isEmpty() ? null : interrupted.removeLast();
+    }
+
+    void addField(String name, String descriptor) {
+        fields.add(new Field(name, descriptor));
+    }
+
+    // Code
+
+    // Emit an instruction, stackChange is how it changes the operand stack in slots (a double takes two)
+    void emit(int opcode, int stackChange) {
+        write(opcode);
+        adjustStack(stackChange);
+    }
+
+    // Loads and stores of local variables
+    void emitLocal(int opcode, int local, int stackChange) {
+        if (local > 255) {
+            write(0xc4); // wide
+            write(opcode);
+            write(local >> 8);
+            write(local);
+        }
+        else {
+            write(opcode);
+            write(local);
+        }
+        adjustStack(stackChange);
+    }
+
+    void emitDouble(double value) {
+        if (Double.doubleToRawLongBits(value) == 0L) {
+            emit(DCONST_0, 2);
+        }
+        else if (value == 1.0) {
+            emit(DCONST_1, 2);
+        }
+        else {
+            emitPoolReference(LDC2_W, doubleConstant(value), 2);
+        }
+    }
+
+    void emitString(String value) {
+        int index = stringConstant(value);
+        if (index < 256) {
+            write(LDC);
+            write(index);
+            adjustStack(1);
+        }
+        else {
+            emitPoolReference(LDC_W, index, 1);
+        }
+    }
+
+    void emitInvoke(int opcode, String owner, String name, String descriptor, int stackChange) {
+        emitPoolReference(opcode, methodReference(owner, name, descriptor), stackChange);
+    }
+
+    // Calls a method of the class being written
+    void emitInvoke(String name) {
+        emitInvoke(INVOKESTATIC, className, name, "()V", 0);
+    }
+
+    // Loads and stores of fields of the class being written
+    void emitField(int opcode, String name, String descriptor, int stackChange) {
+        emitPoolReference(opcode, fieldReference(name, descriptor), stackChange);
+    }
+
+    void emitJump(int opcode, Label label, int stackChange) {
+        int position = method.length;
+        write(opcode);
+        write(0);
+        write(0);
+        adjustStack(stackChange);
+
+        if (label.position >= 0) {
+            patch(position, label.position);
+        }
+        else {
+            label.branches.add(position);
+        }
+    }
+
+    void placeLabel(Label label) {
+        label.position = method.length;
+        for (int branch : label.branches) {
+            patch(branch, label.position);
+        }
+    }
+
+    // Branches join with the stack height they had before the branch, the compiler sets it back explicitly
+    int stackHeight() {
+        return method.stack;
+    }
+
+    void setStackHeight(int height) {
+        method.stack = height;
+    }
+
+    void useLocals(int count) {
+        method.maxLocals = Math.max(method.maxLocals, count);
+    }
+
+    int codeLength() {
+        return method.length;
+    }
+
+    // Class file
+
+    // Every method must have ended
+    byte[] toByteArray() {
+        try {
+            int thisClass = classConstant(className);
+            int superClass = classConstant("java/lang/Object");
+            int descriptor = utf8Constant("()V");
+            int codeAttribute = utf8Constant("Code");
+            int[] fieldNames = new int[fields.size()];
+            int[] fieldDescriptors = new int[fields.size()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = utf8Constant(fields.get(i).name());
+                fieldDescriptors[i] = utf8Constant(fields.get(i).descriptor());
+            }
+            int[] methodNames = new int[methods.size()];
+            for (int i = 0; i < methodNames.length; i++) {
+                methodNames[i] = utf8Constant(methods.get(i).name);
+            }
+            if (poolCount > 65535 || fields.size() > 65535 || methods.size() > 65535) {
+                throw new LimitExceeded("Class too large");
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(0); // interfaces
+
+            out.writeShort(fields.size());
+            for (int i = 0; i < fieldNames.length; i++) {
+                out.writeShort(0x000a); // private static
+                out.writeShort(fieldNames[i]);
+                out.writeShort(fieldDescriptors[i]);
+                out.writeShort(0); // attributes
+            }
+
+            out.writeShort(methods.size());
+            for (int i = 0; i < methodNames.length; i++) {
+                Method written = methods.get(i);
+                out.writeShort(0x0009); // public static
+                out.writeShort(methodNames[i]);
+                out.writeShort(descriptor);
+                out.writeShort(1); // attributes
+                out.writeShort(codeAttribute);
+                out.writeInt(12 + written.length);
+                out.writeShort(written.maxStack);
+                out.writeShort(written.maxLocals);
+                out.writeInt(written.length);
+                out.write(written.code, 0, written.length);
+                out.writeShort(0); // exception table
+                out.writeShort(0); // code attributes
+            }
+
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Constant pool
+
+    private int utf8Constant(String value) {
+        return constant("U" + value, () -> {
+            poolOut.writeByte(1);
+            poolOut.writeUTF(value);
+        }, 1);
+    }
+
+    private int classConstant(String internalName) {
+        int name = utf8Constant(internalName);
+        return constant("C" + internalName, () -> {
+            poolOut.writeByte(7);
+            poolOut.writeShort(name);
+        }, 1);
+    }
+
+    private int stringConstant(String value) {
+        int utf8 = utf8Constant(value);
+        return constant("S" + value, () -> {
+            poolOut.writeByte(8);
+            poolOut.writeShort(utf8);
+        }, 1);
+    }
+
+    private int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, () -> {
+            poolOut.writeByte(6);
+            poolOut.writeLong(bits);
+        }, 2);
+    }
+
+    private int methodReference(String owner, String name, String descriptor) {
+        int ownerClass = classConstant(owner);
+        int nameUtf8 = utf8Constant(name);
+        int descriptorUtf8 = utf8Constant(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, () -> {
+            poolOut.writeByte(12);
+            poolOut.writeShort(nameUtf8);
+            poolOut.writeShort(descriptorUtf8);
+        }, 1);
+        return constant("M" + owner + "." + name + ":" + descriptor, () -> {
+            poolOut.writeByte(10);
+            poolOut.writeShort(ownerClass);
+            poolOut.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private int fieldReference(String name, String descriptor) {
+        int ownerClass = classConstant(className);
+        int nameUtf8 = utf8Constant(name);
+        int descriptorUtf8 = utf8Constant(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, () -> {
+            poolOut.writeByte(12);
+            poolOut.writeShort(nameUtf8);
+            poolOut.writeShort(descriptorUtf8);
+        }, 1);
+        return constant("F" + name + ":" + descriptor, () -> {
+            poolOut.writeByte(9);
+            poolOut.writeShort(ownerClass);
+            poolOut.writeShort(nameAndType);
+        }, 1);
+    }
+
+    private interface PoolEntry {
+        void write() throws IOException;
+    }
+
+    private int constant(String key, PoolEntry entry, int size) {
+        Integer index = poolIndexes.get(key);
+        if (index == null) {
+            try {
+                entry.write();
+            } catch (IOException e) {
+                // writeUTF refuses strings longer than 65535 bytes
+                throw new LimitExceeded(e.getMessage());
+            }
+            index = poolCount;
+            poolCount += size;
+            poolIndexes.put(key, index);
+        }
+        return index;
+    }
+
+    // Helper Methods
+    private void emitPoolReference(int opcode, int index, int stackChange) {
+        write(opcode);
+        write(index >> 8);
+        write(index);
+        adjustStack(stackChange);
+    }
+
+    private void patch(int branch, int target) {
+        int offset = target - branch;
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new LimitExceeded("Branch offset out of range");
+        }
+        method.code[branch + 1] = (byte) (offset >> 8);
+        method.code[branch + 2] = (byte) offset;
+    }
+
+    private void adjustStack(int change) {
+        method.stack += change;
+        method.maxStack = Math.max(method.maxStack, method.stack);
+    }
+
+    private void write(int value) {
+        if (method.length == method.code.length) {
+            method.code = Arrays.copyOf(method.code, method.code.length * 2);
+        }
+        method.code[method.length++] = (byte) value;
+    }
+}
@@ -1,50 +1,118 @@
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Environment {
+    // Marks a slot whose value is held unboxed in the numbers array
+    private static final Object NUMBER = new Object();
+
     Environment enclosing = null;
 
+    // Variables live in slots assigned by the SpartieResolver, so a lookup is an array index rather than a hash probe
+    private Object[] slots;
+    private double[] numbers;
+
     public Environment() {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.environment();
+        this.slots = new Object[8];
+        this.numbers = new double[8];
     }
 
-    public Environment(Environment enclosing) {
+    public Environment(Environment enclosing, int size) {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.environment();
         this.enclosing = enclosing;
+        this.slots = new Object[size];
+        this.numbers = new double[size];
     }
 
-    private Map<String, Object> variables = new HashMap<>();
+    int size() {
+        return slots.length;
+    }
 
     // Define - Create a variable
-    void define(String name, Object value) {
-        variables.put(name, value);
+    void define(int slot, Object value) {
+        grow(slot);
+        store(slot, value);
     }
 
-    Object get(String name) {
-        // TODO: Return variable if it exists in our current environment, otherwise, check enclosing, otherwise,
-        //  return null (it does not exist)
+    void defineDouble(int slot, double value) {
+        grow(slot);
+        storeDouble(slot, value);
+    }
 
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (enclosing != null) {
-            return enclosing.get(name);
+    // The global environment grows as new top level declarations are resolved
+    private void grow(int slot) {
+        if (slot >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, slots.length * 2));
+            numbers = Arrays.copyOf(numbers, slots.length);
         }
+    }
+
+    Object get(int depth, int slot) {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.lookup(depth);
+        return ancestor(depth).load(slot);
+    }
 
-        return null;
+    boolean isDouble(int depth, int slot) {
+        return ancestor(depth).holdsDouble(slot);
+    }
+
+    // Only valid when isDouble is true for the slot
+    double getDouble(int depth, int slot) {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.lookup(depth);
+        return ancestor(depth).loadDouble(slot);
     }
 
     // Assign - Replace the value of an existing variable
-    void assign(Token name, Object value) {
-        // TODO: If the variable exists, then we can assign, otherwise we have an error
-
-        // TODO: If we don't have it in our current environment, try assigning in the enclosing environment
-
-        if (variables.containsKey(name.text)) {
-            variables.put(name.text, value);
-        } else if (enclosing != null) {
-            enclosing.assign(name, value);
-        } else {
-            // Error handling
-            System.err.println("Undefined variable: " + name.text);
-            System.exit(ErrorCode.INTERPRET_ERROR);
+    void assign(int depth, int slot, Object value) {
+        ancestor(depth).store(slot, value);
+    }
+
+    void assignDouble(int depth, int slot, double value) {
+        ancestor(depth).storeDouble(slot, value);
+    }
+
+    // The accessors of a single slot of this environment, which SharedGlobals replaces. While no SharedGlobals has
+    // been created the JIT sees only these and inlines them.
+
+    Object load(int slot) {
+        Object value = slots[slot];
+
+        // Box only when the number escapes as an Object
+        if (value == NUMBER) {
+            if (SpartieMetrics.ENABLED) SpartieMetrics.boxed();
+            return numbers[slot];
+        }
+        return value;
+    }
+
+    boolean holdsDouble(int slot) {
+        return slots[slot] == NUMBER;
+    }
+
+    double loadDouble(int slot) {
+        return numbers[slot];
+    }
+
+    void storeDouble(int slot, double value) {
+        slots[slot] = NUMBER;
+        numbers[slot] = value;
+    }
+
+    void store(int slot, Object value) {
+        if (value instanceof Double number) {
+            slots[slot] = NUMBER;
+            numbers[slot] = number;
+        }
+        else {
+            slots[slot] = value;
+        }
+    }
+
+    // Walk up the chain the number of scopes the resolver counted between the use and the declaration
+    private Environment ancestor(int depth) {
+        Environment environment = this;
+        for (int i = 0; i < depth; i++) {
+            environment = environment.enclosing;
         }
+        return environment;
     }
 }
@@ -2,5 +2,7 @@ public class ErrorCode {
     public static int
             INCORRECT_USAGE = 1,
             FILE_NOT_FOUND = 2,
-            INTERPRET_ERROR = 3;
+            INVALID_TYPE = 2,
+            INTERPRET_ERROR = 3,
+            PARSE_ERROR = 1;
 }
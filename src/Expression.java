@@ -1,8 +1,14 @@
+import java.util.List;
+
 abstract class Expression {
 
     static class AssignmentExpression extends Expression {
-        public Token name;
-        public Expression value;
+        public final Token name;
+        public final Expression value;
+
+        // Filled in by the SpartieResolver, a depth of -1 means the variable was never declared
+        public int depth = -1;
+        public int slot = -1;
 
         public AssignmentExpression(Token name, Expression value) {
             this.name = name;
@@ -11,9 +17,9 @@ abstract class Expression {
     }
 
     static class LogicalExpression extends Expression {
-        public Expression left;
-        public Token operator;
-        public Expression right;
+        public final Expression left;
+        public final Token operator;
+        public final Expression right;
 
         public LogicalExpression(Expression left, Token operator, Expression right) {
             this.left = left;
@@ -23,20 +29,26 @@ abstract class Expression {
     }
 
     static class BinaryExpression extends Expression {
-        public Expression left;
-        public Token operator;
-        public Expression right;
+        public final Expression left;
+        public final Token operator;
+        public final Expression right;
+
+        // How the interpreter applies the operator to boxed operands, rewritten as the site sees operand types. The one
+        // field written while the tree runs. Nodes have only final fields and every node gives the right result for any
+        // operands, so interpreters on other threads may see an older node, or rewrite it again, without harm.
+        public BinaryNode node;
 
         public BinaryExpression(Expression left, Token operator, Expression right) {
             this.left = left;
             this.operator = operator;
             this.right = right;
+            this.node = new BinaryNode.Uninitialized(this);
         }
     }
 
     static class UnaryExpression extends Expression {
-        public Token operator;
-        public Expression right;
+        public final Token operator;
+        public final Expression right;
 
         public UnaryExpression(Token operator, Expression right) {
             this.operator = operator;
@@ -45,23 +57,58 @@ abstract class Expression {
     }
 
     static class VariableExpression extends Expression {
-        public Token name;
+        public final Token name;
+
+        // Filled in by the SpartieResolver, a depth of -1 means the variable was never declared
+        public int depth = -1;
+        public int slot = -1;
 
         public VariableExpression(Token name) {
             this.name = name;
         }
     }
 
+    // A call of a function by its name
+    static class CallExpression extends Expression {
+        public final Token name;
+        public final List<Expression> arguments;
+
+        // Filled in by the SpartieResolver. A call that cannot be made, to a function that does not exist or with the
+        // wrong number of arguments, has no function but the error it fails with.
+        public Statement.FunctionStatement function = null;
+        public String error = null;
+
+        public CallExpression(Token name, List<Expression> arguments) {
+            this.name = name;
+            this.arguments = arguments;
+        }
+    }
+
     static class LiteralExpression extends Expression {
-        public Object literalValue;
+        public final Object literalValue;
 
         public LiteralExpression(Object literalValue) {
             this.literalValue = literalValue;
         }
     }
 
+    // A loop invariant expression moved out of its for loop by the SpartieOptimizer. It is evaluated the first time the
+    // loop needs it and the value is kept in a slot of the loop's scope for the rest of that run of the loop.
+    static class HoistedExpression extends Expression {
+        public final Expression expression;
+        public final int index;
+
+        // Filled in by the SpartieResolver, the slot is the index
+        public int depth = -1;
+
+        public HoistedExpression(Expression expression, int index) {
+            this.expression = expression;
+            this.index = index;
+        }
+    }
+
     static class ParenthesesExpression extends Expression {
-        public Expression expression;
+        public final Expression expression;
 
         public ParenthesesExpression(Expression expression) {
             this.expression = expression;
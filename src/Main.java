@@ -1,44 +1,551 @@
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 public class Main {
+    // Rows run together by the batch interpreter. Every column holds this many values.
+    private static final int BATCH_CHUNK = 4096;
+
+    // The thread main runs scripts on, once it knows how deep their calls may go
+    private static Thread scriptThread;
+
     public static void main(String[] args) {
-        if (args.length != 1) {
-            System.out.println("Usage: spartie [file]");
-            System.exit(ErrorCode.INCORRECT_USAGE);
+        String engine = "ast";
+        boolean optimize = true;
+        boolean dumpAst = false;
+        String output = "buffered";
+        boolean stream = false;
+        boolean useCache = true;
+        boolean repl = false;
+        String batch = null;
+        String serve = null;
+        String profile = null;
+        boolean metrics = false;
+        List<String> filenames = new ArrayList<>();
+
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            }
+            else if (arg.equals("--no-opt")) {
+                optimize = false;
+            }
+            else if (arg.equals("--dump-ast")) {
+                dumpAst = true;
+            }
+            else if (arg.equals("--no-cache")) {
+                useCache = false;
+            }
+            else if (arg.equals("--repl")) {
+                repl = true;
+            }
+            else if (arg.equals("--stream")) {
+                stream = true;
+            }
+            else if (arg.startsWith("--serve=")) {
+                serve = arg.substring("--serve=".length());
+            }
+            else if (arg.equals("--metrics")) {
+                // Read once, when the counters are first used, which is after the arguments
+                System.setProperty("spartie.metrics", "true");
+                metrics = true;
+            }
+            else if (arg.equals("--profile")) {
+                profile = "";
+            }
+            else if (arg.startsWith("--profile=")) {
+                profile = arg.substring("--profile=".length());
+            }
+            else if (arg.startsWith("--batch=")) {
+                batch = arg.substring("--batch=".length());
+            }
+            else if (arg.startsWith("--output=")) {
+                output = arg.substring("--output=".length());
+            }
+            else if (arg.startsWith("--max-depth=")) {
+                try {
+                    int depth = Integer.parseInt(arg.substring("--max-depth=".length()));
+                    if (depth < 1 || depth > SpartieInterpreter.MAX_CALL_DEPTH) {
+                        usage();
+                    }
+                    SpartieInterpreter.setMaxCallDepth(depth);
+                } catch (NumberFormatException e) {
+                    usage();
+                }
+            }
+            else if (!arg.startsWith("--")) {
+                filenames.add(arg);
+            }
+            else {
+                usage();
+            }
+        }
+
+        // The stack needed is only known now, so main starts over on a thread with that much
+        if (Thread.currentThread() != scriptThread) {
+            runOnScriptThread(args);
+            return;
+        }
+
+        if (repl && filenames.isEmpty() && serve == null && batch == null && !stream && engine.equals("ast")) {
+            // Read from the terminal until end of input, prompting only when someone is typing
+            SpartieRuntime.setOutput(new BufferedOutputSink(System.out, System.out.charset()));
+            try {
+                new SpartieRepl(optimize).run(new BufferedReader(new InputStreamReader(System.in)), System.console() != null);
+            } catch (IOException e) {
+                System.err.println("Unable to read input");
+            }
+        }
+        else if (serve != null && filenames.isEmpty()) {
+            // Runs until killed, scripts come in over the socket
+            try {
+                new SpartieServer(Paths.get(serve)).serve();
+            } catch (IOException e) {
+                System.err.printf("Unable to listen on %s\n", serve);
+                System.exit(ErrorCode.INCORRECT_USAGE);
+            }
+        }
+        else if (filenames.isEmpty() || serve != null || repl || !(engine.equals("ast") || engine.equals("vm") || engine.equals("jvm"))
+                || !(output.equals("direct") || output.equals("buffered") || output.equals("async"))
+                || ((stream || batch != null || profile != null) && !engine.equals("ast")) || (stream && batch != null)
+                || (profile != null && (stream || batch != null || dumpAst))) {
+            usage();
+        }
+        else if (filenames.size() > 1 || Files.isDirectory(Paths.get(filenames.getFirst()))) {
+            if (stream || batch != null || dumpAst || profile != null) {
+                usage();
+            }
+            runAll(filenames, engine, optimize, useCache);
         }
         else {
-            String filename = args[0];
+            String filename = filenames.getFirst();
             File source = new File(filename);
             if (!source.exists()) {
                 System.err.printf("File %s not found\n", filename);
                 System.exit(ErrorCode.FILE_NOT_FOUND);
             }
+            if (batch != null && !new File(batch).exists()) {
+                System.err.printf("File %s not found\n", batch);
+                System.exit(ErrorCode.FILE_NOT_FOUND);
+            }
+
+            // Print statements write through the sink, flushed once the program is done
+            SpartieRuntime.setOutput(switch (output) {
+                case "direct" -> new OutputSink.Direct(System.out);
+                case "async" -> new AsyncOutputSink(System.out, System.out.charset());
+                default -> new BufferedOutputSink(System.out, System.out.charset());
+            });
 
+            // Exiting is left until the output is flushed and the counters are reported, which matter most for a
+            // program that failed
+            int exitCode = 0;
             try {
-                byte [] sourceCodeBytes = Files.readAllBytes(Paths.get(filename));
-                String sourceCode = new String(sourceCodeBytes, Charset.defaultCharset());
+                if (stream) {
+                    stream(Paths.get(filename), optimize, dumpAst);
+                }
+                else {
+                    List<Statement> statements = load(Paths.get(filename), optimize, useCache);
+
+                    if (dumpAst) {
+                        System.out.print(new AstPrinter().print(statements));
+                    }
+                    else if (batch != null) {
+                        exitCode = runBatch(statements, Paths.get(batch));
+                    }
+                    else if (profile != null) {
+                        profile(statements, Paths.get(filename), Paths.get(profile.isEmpty() ? filename + ".folded" : profile));
+                    }
+                    else {
+                        execute(statements, engine);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.printf("Unable to read file %s\n", filename);
+            } catch (SpartieError e) {
+                // What the program printed before the error comes out before the error does
+                SpartieRuntime.output().flush();
+                System.err.println(e.getMessage());
+                exitCode = e.exitCode;
+            } finally {
+                SpartieRuntime.output().flush();
+                if (metrics) {
+                    SpartieMetrics.report(System.err);
+                }
+            }
 
-                // Scan
-                SpartieScanner spartieScanner = new SpartieScanner(sourceCode);
-                List<Token> tokens = spartieScanner.scan();
+            if (exitCode != 0) {
+                System.exit(exitCode);
+            }
+        }
+    }
+
+    private static void runOnScriptThread(String[] args) {
+        Throwable[] failure = new Throwable[1];
+        scriptThread = SpartieInterpreter.threads().name("spartie-main").unstarted(() -> main(args));
+        scriptThread.setUncaughtExceptionHandler((thread, e) -> failure[0] = e);
+        scriptThread.start();
+        try {
+            scriptThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        // An exception nothing caught ends the program here, as it would have without the thread
+        switch (failure[0]) {
+            case null -> {}
+            case RuntimeException e -> throw e;
+            case Error e -> throw e;
+            default -> throw new IllegalStateException(failure[0]);
+        }
+    }
 
-                // Parse
-                SpartieParser spartieParser = new SpartieParser(tokens);
-                List<Statement> statements = spartieParser.parse();
+    // Scans, parses and optimizes a script. A script that has not changed since its last run is loaded from its cache
+    // instead of parsed again.
+    static List<Statement> load(Path path, boolean optimize, boolean useCache) throws IOException {
+        byte [] sourceCodeBytes = Files.readAllBytes(path);
+
+        Path cache = ScriptCache.pathFor(path);
+        List<Statement> statements = useCache ? ScriptCache.load(cache, sourceCodeBytes, optimize) : null;
+        if (statements != null) {
+            return statements;
+        }
+
+        String sourceCode = new String(sourceCodeBytes, Charset.defaultCharset());
+
+        if (sourceCode.length() >= 2 * ParallelParser.MIN_CHUNK && Runtime.getRuntime().availableProcessors() > 1) {
+            // Scan and parse a large source in chunks on every core
+            statements = new ParallelParser(sourceCode, ForkJoinPool.commonPool()).parse();
+        }
+        else {
+            // Scan
+            SpartieEvents.Scan scan = new SpartieEvents.Scan();
+            scan.begin();
+            SpartieScanner spartieScanner = new SpartieScanner(sourceCode);
+            TokenBuffer tokens = spartieScanner.scanBuffer();
+            scan.characters = sourceCode.length();
+            scan.tokens = tokens.size();
+            scan.commit();
+
+            // Parse
+            SpartieEvents.Parse parse = new SpartieEvents.Parse();
+            parse.begin();
+            SpartieParser spartieParser = new SpartieParser(tokens);
+            statements = spartieParser.parse();
+            parse.statements = statements.size();
+            parse.commit();
+        }
+
+        // Optimize
+        if (optimize) {
+            SpartieEvents.Optimize event = new SpartieEvents.Optimize();
+            event.begin();
+            statements = new SpartieOptimizer().optimize(statements);
+            event.commit();
+        }
+
+        if (useCache) {
+            ScriptCache.store(cache, sourceCodeBytes, optimize, statements);
+        }
+        return statements;
+    }
+
+    // Runs the statements on the chosen engine, printing through SpartieRuntime.output()
+    static void execute(List<Statement> statements, String engine) {
+        execute(statements, engine, false);
+    }
 
-                // Interpret
+    // A tree that is already resolved is not resolved again, so other threads may be running it at the same time
+    static void execute(List<Statement> statements, String engine, boolean resolved) {
+        SpartieEvents.Interpret event = new SpartieEvents.Interpret();
+        event.engine = engine;
+        event.begin();
+        try {
+            run(statements, engine, resolved);
+        } finally {
+            event.commit();
+        }
+    }
+
+    private static void run(List<Statement> statements, String engine, boolean resolved) {
+        if (engine.equals("vm")) {
+            // Compile to bytecode and run it on the VM, programs it cannot compile fall back to the interpreter
+            Chunk chunk = new SpartieCompiler().compile(statements);
+            if (chunk != null) {
+                new SpartieVM().run(chunk);
+                return;
+            }
+        }
+        if (engine.equals("jvm")) {
+            // Compile to a JVM class, programs it cannot compile fall back to the interpreter
+            Runnable script = new SpartieClassCompiler().compile(statements);
+            if (script != null) {
+                script.run();
+                return;
+            }
+        }
+
+        // Resolve
+        if (!resolved) {
+            resolve(statements);
+        }
+
+        // Interpret
+        SpartieInterpreter spartieInterpreter = new SpartieInterpreter();
+        spartieInterpreter.run(statements);
+    }
+
+    static void resolve(List<Statement> statements) {
+        SpartieEvents.Resolve resolve = new SpartieEvents.Resolve();
+        resolve.begin();
+        SpartieResolver spartieResolver = new SpartieResolver();
+        spartieResolver.resolve(statements);
+        resolve.commit();
+    }
+
+    // Runs the statements on the interpreter with the profiler watching. The table of hot lines goes to stderr once the
+    // script is done, or has failed, and the stacks to their file.
+    private static void profile(List<Statement> statements, Path script, Path stacks) throws IOException {
+        SpartieProfiler profiler = new SpartieProfiler(statements);
+        new SpartieResolver().resolve(statements);
+        SpartieInterpreter spartieInterpreter = new SpartieInterpreter(profiler);
+
+        profiler.start();
+        try {
+            spartieInterpreter.run(statements);
+        } finally {
+            profiler.stop();
+            SpartieRuntime.output().flush();
+            profiler.report(System.err, Files.readAllLines(script, Charset.defaultCharset()));
+            profiler.writeStacks(stacks);
+        }
+    }
+
+    // What running one script of many produced, held until the scripts before it have been reported
+    private static final class ScriptResult {
+        final byte[] output;
+        final String error;
+        final int exitCode;
+
+        ScriptResult(byte[] output, String error, int exitCode) {
+            this.output = output;
+            this.error = error;
+            this.exitCode = exitCode;
+        }
+    }
+
+    // Runs many scripts at once on a pool of threads, each with its own interpreter and output buffer. A directory
+    // stands for every .sprty file below it. Output comes out in the order the scripts were given, whatever order they
+    // finish in, and a script that fails reports its error without affecting the others. The exit code is that of
+    // the first script that failed.
+    private static void runAll(List<String> filenames, String engine, boolean optimize, boolean useCache) {
+        List<Path> scripts = new ArrayList<>();
+        for (String filename : filenames) {
+            Path path = Paths.get(filename);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.walk(path)) {
+                    files.filter(file -> Files.isRegularFile(file) && file.toString().endsWith(".sprty"))
+                            .sorted()
+                            .forEach(scripts::add);
+                } catch (IOException e) {
+                    System.err.printf("Unable to read directory %s\n", filename);
+                    System.exit(ErrorCode.FILE_NOT_FOUND);
+                }
+            }
+            else {
+                scripts.add(path);
+            }
+        }
+
+        long start = System.nanoTime();
+        // A thread of the pool needs the stack of the thread main runs on
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                SpartieInterpreter.threads().name("spartie-script-", 0).factory());
+        List<Future<ScriptResult>> results = new ArrayList<>();
+        for (Path script : scripts) {
+            results.add(pool.submit(() -> runIsolated(script, engine, optimize, useCache)));
+        }
+
+        // Each result is written as soon as it and every result before it are in
+        int exitCode = 0;
+        int failed = 0;
+        for (int i = 0; i < scripts.size(); i++) {
+            ScriptResult result = join(results.get(i));
+            System.out.write(result.output, 0, result.output.length);
+            if (result.exitCode != 0) {
+                System.out.flush();
+                System.err.print(result.error);
+                System.err.printf("%s: exit %d\n", scripts.get(i), result.exitCode);
+                failed++;
+                if (exitCode == 0) {
+                    exitCode = result.exitCode;
+                }
+            }
+        }
+        pool.shutdown();
+        System.out.flush();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Ran %d scripts in %.2fs (%.1f scripts/s), %d failed\n",
+                scripts.size(), seconds, scripts.size() / seconds, failed);
+        System.exit(exitCode);
+    }
+
+    // The result of a script, which runIsolated always returns rather than throws
+    private static ScriptResult join(Future<ScriptResult> result) {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static ScriptResult runIsolated(Path script, String engine, boolean optimize, boolean useCache) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BufferedOutputSink sink = new BufferedOutputSink(output, System.out.charset());
+        String error = "";
+        int exitCode = 0;
+
+        SpartieRuntime.setThreadOutput(sink);
+        try {
+            execute(load(script, optimize, useCache), engine);
+        } catch (IOException e) {
+            error = String.format("Unable to read file %s\n", script);
+            exitCode = ErrorCode.FILE_NOT_FOUND;
+        } catch (SpartieError e) {
+            error = e.getMessage() + System.lineSeparator();
+            exitCode = e.exitCode;
+        } catch (RuntimeException | StackOverflowError e) {
+            // What would have been an uncaught exception ends this script only
+            error = e + System.lineSeparator();
+            exitCode = 1;
+        } finally {
+            SpartieRuntime.setThreadOutput(null);
+            sink.flush();
+        }
+
+        return new ScriptResult(output.toByteArray(), error, exitCode);
+    }
+
+    // Runs each top level statement as soon as it is parsed. The source is mapped rather than read, and neither the
+    // tokens nor the statements of the whole program are ever held at once, so memory use stays flat however large
+    // the script is. Only the interpreter can run a program it has not seen the end of.
+    private static void stream(Path path, boolean optimize, boolean dumpAst) throws IOException {
+        SpartieParser spartieParser = new SpartieParser(new SpartieScanner(new MappedSource(path, Charset.defaultCharset())));
+        SpartieOptimizer spartieOptimizer = new SpartieOptimizer(false);
+        SpartieResolver spartieResolver = new SpartieResolver();
+        SpartieInterpreter spartieInterpreter = new SpartieInterpreter();
+
+        Statement statement;
+        while ((statement = spartieParser.nextStatement()) != null) {
+            List<Statement> statements = List.of(statement);
+            if (optimize) {
+                statements = spartieOptimizer.optimize(statements);
+            }
+
+            if (dumpAst) {
+                System.out.print(new AstPrinter().print(statements));
+                continue;
+            }
+
+            spartieResolver.resolve(statements);
+            spartieInterpreter.run(statements);
+        }
+    }
+
+    // Runs the program once for every row of starting values in the batch file, a chunk of rows at a time. The output
+    // of each row comes out in row order, and a row that fails reports its error in its place without stopping the
+    // rows after it. Returns the exit code of the first row that failed, 0 if none did.
+    private static int runBatch(List<Statement> statements, Path path) throws IOException {
+        BatchInput input;
+        try {
+            input = BatchInput.read(path);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return ErrorCode.INCORRECT_USAGE;
+        }
+
+        SpartieResolver spartieResolver = new SpartieResolver();
+        int[] slots = new int[input.names.size()];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = spartieResolver.declareGlobal(input.names.get(i));
+        }
+        spartieResolver.resolve(statements);
+
+        OutputSink output = SpartieRuntime.output();
+        int exitCode = 0;
+        if (statements.stream().anyMatch(statement -> statement instanceof Statement.FunctionStatement)) {
+            // The batch interpreter has no call stack, so each row runs on its own tree interpreter
+            for (Object[] row : input.rows) {
                 SpartieInterpreter spartieInterpreter = new SpartieInterpreter();
-                spartieInterpreter.run(statements);
+                for (int i = 0; i < slots.length; i++) {
+                    spartieInterpreter.defineGlobal(slots[i], row[i]);
+                }
+                try {
+                    spartieInterpreter.run(statements);
+                } catch (SpartieError e) {
+                    output.flush();
+                    System.err.println(e.getMessage());
+                    if (exitCode == 0) {
+                        exitCode = e.exitCode;
+                    }
+                }
+            }
+        } else {
+            for (int start = 0; start < input.rows.size(); start += BATCH_CHUNK) {
+                int size = Math.min(BATCH_CHUNK, input.rows.size() - start);
 
-            } catch (IOException e) {
-                System.err.printf("Unable to read file %s\n", filename);
+                SpartieBatchInterpreter spartieBatchInterpreter = new SpartieBatchInterpreter(size);
+                for (int i = 0; i < slots.length; i++) {
+                    Object[] values = new Object[size];
+                    for (int row = 0; row < size; row++) {
+                        values[row] = input.rows.get(start + row)[i];
+                    }
+                    spartieBatchInterpreter.defineGlobal(slots[i], values);
+                }
+                spartieBatchInterpreter.run(statements);
+
+                for (int row = 0; row < size; row++) {
+                    String text = spartieBatchInterpreter.output(row);
+                    if (!text.isEmpty()) {
+                        // The output already ends in a line separator
+                        output.println(text.substring(0, text.length() - System.lineSeparator().length()));
+                    }
+
+                    SpartieError failure = spartieBatchInterpreter.failure(row);
+                    if (failure != null) {
+                        output.flush();
+                        System.err.println(failure.getMessage());
+                        if (exitCode == 0) {
+                            exitCode = failure.exitCode;
+                        }
+                    }
+                }
             }
         }
+
+        return exitCode;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: spartie [--engine=ast|vm|jvm] [--no-opt] [--dump-ast] [--output=direct|buffered|async] [--stream] [--no-cache] [--batch=file] [--profile[=stacks file]] [--metrics] [--max-depth=calls] [file... | directory | --serve=socket | --repl]");
+        System.exit(ErrorCode.INCORRECT_USAGE);
     }
-}
\ No newline at end of file
+}
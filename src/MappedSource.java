@@ -0,0 +1,46 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A source file mapped into memory instead of read onto the heap. Each byte is presented as one character: the
+// scanner only gives meaning to ASCII characters, and in UTF-8 (or any ASCII compatible charset) every byte of a
+// non-ASCII character lies outside the ASCII range, so the structure of the program is found without decoding.
+// Only the text of a token is decoded, when the scanner takes it with subSequence. Indexes are byte offsets.
+public class MappedSource implements CharSequence {
+    private final MappedByteBuffer bytes;
+    private final Charset charset;
+
+    public MappedSource(Path path, Charset charset) throws IOException {
+        // The mapping stays valid after the channel is closed
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            this.bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        this.charset = charset;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    // The decoded text of the bytes from start to end
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        byte[] text = new byte[end - start];
+        bytes.get(start, text);
+        return new String(text, charset);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
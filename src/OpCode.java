@@ -0,0 +1,63 @@
+// Instruction set of the SpartieVM. Operands follow their opcode in the code array.
+public class OpCode {
+    public static final int
+            // Push a value: NUMBER and CONSTANT take an index into the number or constant pool
+            NUMBER = 0,
+            CONSTANT = 1,
+            NULL = 2,
+            TRUE = 3,
+            FALSE = 4,
+            POP = 5,
+
+            // Variables, the operand is the local slot. SET_LOCAL leaves the value on the stack, STORE_LOCAL pops it.
+            GET_LOCAL = 6,
+            SET_LOCAL = 7,
+            STORE_LOCAL = 8,
+            UNDEFINED_VARIABLE = 9, // operand is the constant holding the variable's Token
+
+            // Operators, those that can fail take the constant holding the operator's Token for error messages
+            ADD = 10,
+            SUBTRACT = 11,
+            MULTIPLY = 12,
+            DIVIDE = 13,
+            NEGATE = 14,
+            NOT = 15,
+            EQUIVALENT = 16,
+            NOT_EQUAL = 17,
+            GREATER_THAN = 18,
+            GREATER_EQUAL = 19,
+            LESS_THAN = 20,
+            LESS_EQUAL = 21,
+
+            // Built in
+            PRINT = 22,
+
+            // Control flow, the operand is an absolute jump target. JUMP_IF_FALSE pops the condition, the _KEEP
+            // variants used by '&' and '|' leave it on the stack.
+            JUMP = 23,
+            JUMP_IF_FALSE = 24,
+            JUMP_IF_FALSE_KEEP = 25,
+            JUMP_IF_TRUE_KEEP = 26,
+            HALT = 27,
+
+            // Superinstructions for the shapes that dominate loops. The _NUMBER operators take the number pool index of
+            // their right operand followed by the operator's constant. The JUMP_IF_NOT_ comparisons pop both operands
+            // and take the operator's constant followed by the jump target.
+            ADD_NUMBER = 28,
+            SUBTRACT_NUMBER = 29,
+            MULTIPLY_NUMBER = 30,
+            DIVIDE_NUMBER = 31,
+            JUMP_IF_NOT_GREATER = 32,
+            JUMP_IF_NOT_GREATER_EQUAL = 33,
+            JUMP_IF_NOT_LESS = 34,
+            JUMP_IF_NOT_LESS_EQUAL = 35,
+
+            // Statements on a single local. INCREMENT_LOCAL is 'x = x + n' and takes the slot, the number pool index
+            // and the operator's constant. ADD_TO_LOCAL is 'x = x + <expression>', it pops the expression and takes the
+            // slot and the operator's constant. The _LOCAL jumps are 'x < n' and 'x <= n' as loop conditions, they take
+            // the slot, the number pool index, the operator's constant and the jump target.
+            INCREMENT_LOCAL = 36,
+            ADD_TO_LOCAL = 37,
+            JUMP_IF_NOT_LESS_LOCAL = 38,
+            JUMP_IF_NOT_LESS_EQUAL_LOCAL = 39;
+}
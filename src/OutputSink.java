@@ -0,0 +1,35 @@
+import java.io.PrintStream;
+
+// Destination of the lines written by print statements. Every execution engine writes through the sink that
+// SpartieRuntime holds, so Main can choose how output reaches the terminal. A sink may hold on to lines until it is
+// flushed, which Main does when the program ends and SpartieRuntime does before reporting an error.
+public interface OutputSink {
+    void println(String line);
+
+    // Lets a sink format the number straight into its buffer
+    default void println(double value) {
+        println(Double.toString(value));
+    }
+
+    void flush();
+
+    // Writes every line to the stream as it is printed, the behaviour of calling System.out.println directly
+    class Direct implements OutputSink {
+        private final PrintStream stream;
+
+        public Direct(PrintStream stream) {
+            this.stream = stream;
+        }
+
+        @Override
+        public void println(String line) {
+            if (SpartieMetrics.ENABLED) SpartieMetrics.printed(line.getBytes(stream.charset()).length + System.lineSeparator().length());
+            stream.println(line);
+        }
+
+        @Override
+        public void flush() {
+            stream.flush();
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Scans and parses a large source on several threads. A quick pass over the characters finds places where one top
+// level statement ends and the next begins, and the chunks between them are scanned and parsed independently. The
+// statements of the chunks, put back in order, are the statements of the whole program, with the same lines and, for
+// a program with errors, the same first error that scanning and parsing it in one piece would give.
+public class ParallelParser {
+    // Smaller sources, or chunks, are not worth the handoff to another thread
+    static final int MIN_CHUNK = 1 << 20;
+
+    // Where a chunk starts, and the line it starts on
+    private static final class Chunk {
+        final int start;
+        final int line;
+
+        Chunk(int start, int line) {
+            this.start = start;
+            this.line = line;
+        }
+    }
+
+    private final CharSequence source;
+    private final ForkJoinPool pool;
+
+    public ParallelParser(CharSequence source, ForkJoinPool pool) {
+        this.source = source;
+        this.pool = pool;
+    }
+
+    public List<Statement> parse() {
+        List<Chunk> chunks = split();
+        int length = source.length();
+
+        // Scan every chunk first, as the sequential front end scans everything before it parses, so a scan error
+        // anywhere is still reported ahead of a parse error
+        SpartieEvents.Scan scan = new SpartieEvents.Scan();
+        scan.begin();
+        List<ForkJoinTask<TokenBuffer>> scans = new ArrayList<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            Chunk chunk = chunks.get(i);
+            int end = i + 1 < chunks.size() ? chunks.get(i + 1).start : length;
+            scans.add(pool.submit(() -> new SpartieScanner(source, chunk.start, end, chunk.line).scanBuffer()));
+        }
+        // Joined in source order, so the error of the earliest chunk that has one is the one rethrown
+        List<TokenBuffer> buffers = new ArrayList<>();
+        for (ForkJoinTask<TokenBuffer> task : scans) {
+            TokenBuffer buffer = task.join();
+            buffers.add(buffer);
+            scan.tokens += buffer.size();
+        }
+        scan.characters = length;
+        scan.commit();
+
+        SpartieEvents.Parse parse = new SpartieEvents.Parse();
+        parse.begin();
+        List<ForkJoinTask<List<Statement>>> parses = new ArrayList<>();
+        for (TokenBuffer buffer : buffers) {
+            parses.add(pool.submit(() -> new SpartieParser(buffer).parse()));
+        }
+        List<Statement> statements = new ArrayList<>();
+        for (ForkJoinTask<List<Statement>> task : parses) {
+            statements.addAll(task.join());
+        }
+        parse.statements = statements.size();
+        parse.commit();
+        return statements;
+    }
+
+    // Chunks of roughly equal size, each one starting right after a ';' or '}' that ends a top level statement. Inside
+    // a string, a comment, braces or parentheses nothing ends, and neither does an if statement whose else is still to
+    // come. A '}' without its '{' is left for the parser to report, no split is made after it.
+    private List<Chunk> split() {
+        List<Chunk> chunks = new ArrayList<>();
+        chunks.add(new Chunk(0, 1));
+
+        int length = source.length();
+        int size = Math.max(MIN_CHUNK, length / (pool.getParallelism() * 4));
+        int next = size;
+
+        int braces = 0;
+        int parentheses = 0;
+        int line = 1;
+        int current = 0;
+        while (current < length && next < length) {
+            char c = source.charAt(current++);
+            switch (c) {
+                case '\n' -> line++;
+                case '"' -> {
+                    // A string ends at its quote or, unterminated, at the end of the line
+                    while (current < length && source.charAt(current) != '"' && source.charAt(current) != '\n') {
+                        current++;
+                    }
+                    if (current < length && source.charAt(current) == '"') {
+                        current++;
+                    }
+                }
+                case '/' -> {
+                    if (current < length && source.charAt(current) == '/') {
+                        while (current < length && source.charAt(current) != '\n') {
+                            current++;
+                        }
+                    }
+                }
+                case '(' -> parentheses++;
+                case ')' -> parentheses--;
+                case '{' -> braces++;
+                case '}' -> {
+                    if (--braces < 0) {
+                        return chunks;
+                    }
+                }
+                default -> {}
+            }
+
+            if ((c == ';' || c == '}') && braces == 0 && parentheses == 0 && current >= next && !elseFollows(current)) {
+                chunks.add(new Chunk(current, line));
+                next = current + size;
+            }
+        }
+        return chunks;
+    }
+
+    // Whether the next word after the position, past spaces and comments, is else
+    private boolean elseFollows(int position) {
+        int length = source.length();
+        while (position < length) {
+            char c = source.charAt(position);
+            if (c == ' ' || c == '\t' || c == '\r' || c == '\n') {
+                position++;
+            }
+            else if (c == '/' && position + 1 < length && source.charAt(position + 1) == '/') {
+                while (position < length && source.charAt(position) != '\n') {
+                    position++;
+                }
+            }
+            else {
+                break;
+            }
+        }
+
+        if (position + 4 > length || source.charAt(position) != 'e' || source.charAt(position + 1) != 'l'
+                || source.charAt(position + 2) != 's' || source.charAt(position + 3) != 'e') {
+            return false;
+        }
+
+        // Identifiers are letters only, so elsewhere is an identifier but else2 is still else
+        if (position + 4 == length) {
+            return true;
+        }
+        char c = source.charAt(position + 4);
+        return !(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z');
+    }
+}
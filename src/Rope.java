@@ -0,0 +1,87 @@
+// A string built by concatenation, kept unflattened so that a loop doing s = s + x copies each piece once rather than
+// the whole string on every pass. Every rope is a prefix of a builder that may be shared with longer ropes built on
+// it. Appending to the rope that reaches the end of its builder appends in place; appending to any other rope, or to
+// a plain string, starts a builder of its own. The prefix a rope covers never changes, so a rope is as immutable as a
+// String. It is flattened once, when it is printed or compared, and keeps the String after that.
+//
+// Ropes reach other threads through SharedGlobals, so the builder is locked while it is appended to or read. No
+// thread ever holds two of those locks at once.
+final class Rope implements CharSequence {
+    // Results shorter than this stay plain Strings, copying them costs less than a builder
+    static final int THRESHOLD = 256;
+
+    private final StringBuilder builder;
+    private final int length;
+    private String flat;
+
+    private Rope(StringBuilder builder, int length) {
+        this.builder = builder;
+        this.length = length;
+    }
+
+    // Either operand may be a String or a Rope
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        int length = left.length() + right.length();
+        if (length < THRESHOLD) {
+            return left.toString().concat(right.toString());
+        }
+        String tail = right.toString();
+        if (left instanceof Rope rope) {
+            synchronized (rope.builder) {
+                if (rope.length == rope.builder.length()) {
+                    rope.builder.append(tail);
+                    return new Rope(rope.builder, length);
+                }
+            }
+        }
+        StringBuilder builder = new StringBuilder(length * 2);
+        if (left instanceof Rope rope) {
+            // Straight out of the builder, rather than a character at a time through charAt
+            synchronized (rope.builder) {
+                builder.append(rope.builder, 0, rope.length);
+            }
+        }
+        else {
+            builder.append(left);
+        }
+        builder.append(tail);
+        return new Rope(builder, length);
+    }
+
+    // The value as a String when it is a rope, otherwise the value itself
+    static Object flatten(Object value) {
+        return value instanceof Rope rope ? rope.toString() : value;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        synchronized (builder) {
+            return builder.charAt(index);
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String text = flat;
+        if (text == null) {
+            synchronized (builder) {
+                text = builder.substring(0, length);
+            }
+            flat = text;
+        }
+        return text;
+    }
+}
@@ -0,0 +1,476 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+// Keeps the parsed, and optionally optimized, statements of a script in a .sprtyc file next to it, so a script that
+// has not changed is neither scanned nor parsed again. The file is keyed by a hash of the source, the cache version and
+// whether the tree was optimized: any change to one of them makes the file stale, and a stale, truncated or corrupt
+// file is simply ignored and written again. Resolver slots are not stored, the tree is resolved after loading as usual.
+public class ScriptCache {
+    // Bump whenever the tree, the optimizer or the layout below changes meaning, so files written before are rebuilt
+    private static final int VERSION = 3;
+
+    private static final int MAGIC = 0x53505443; // "SPTC"
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // Tags of statements and expressions, 0 stands for null
+    private static final byte PRINT = 1, EXPRESSION = 2, VARIABLE = 3, BLOCK = 4, IF = 5, WHILE = 6, FOR = 7,
+            FUNCTION = 8, RETURN = 9;
+    private static final byte LOGICAL = 1, ASSIGNMENT = 2, VARIABLE_REFERENCE = 3, LITERAL = 4, PARENTHESES = 5,
+            HOISTED = 6, UNARY = 7, BINARY = 8, CALL = 9;
+
+    // Tags of literal values
+    private static final byte NULL = 0, NUMBER = 1, STRING = 2, TRUE = 3, FALSE = 4;
+
+    private ScriptCache() {
+    }
+
+    // Where the cache of a script lives, foo.sprty is cached in foo.sprtyc
+    static Path pathFor(Path script) {
+        return script.resolveSibling(script.getFileName() + "c");
+    }
+
+    // The cached statements of the source, or null if there is no cache for this exact source
+    static List<Statement> load(Path cache, byte[] source, boolean optimized) {
+        if (!Files.isRegularFile(cache)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(cache, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            // Header: magic, key, then the length and checksum of the body
+            if (buffer.getInt() != MAGIC) {
+                return null;
+            }
+            byte[] key = new byte[32];
+            buffer.get(key);
+            if (!Arrays.equals(key, key(source, optimized))) {
+                return null;
+            }
+            int length = buffer.getInt();
+            long checksum = buffer.getLong();
+            if (length != buffer.remaining()) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice());
+            if (crc.getValue() != checksum) {
+                return null;
+            }
+
+            return decode(buffer);
+        } catch (IOException | RuntimeException e) {
+            // A file that cannot be read back, whatever is wrong with it, is as good as no file
+            return null;
+        }
+    }
+
+    // Writes the statements to the cache. The file is written aside and moved into place, so a run that reads it
+    // meanwhile sees the old file or the new one, never half of one. A cache that cannot be written is skipped.
+    static void store(Path cache, byte[] source, boolean optimized, List<Statement> statements) {
+        try {
+            byte[] body = encode(statements);
+            CRC32 crc = new CRC32();
+            crc.update(body);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length + 48);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.write(key(source, optimized));
+            out.writeInt(body.length);
+            out.writeLong(crc.getValue());
+            out.write(body);
+
+            Path temporary = Files.createTempFile(cache.toAbsolutePath().getParent(), cache.getFileName().toString(), ".tmp");
+            try {
+                Files.write(temporary, bytes.toByteArray());
+                Files.move(temporary, cache, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            // Running the script matters, caching it does not
+        }
+    }
+
+    // The statements in the compact form the cache stores them in, without the header
+    static byte[] encode(List<Statement> statements) throws IOException {
+        return new Writer().write(statements);
+    }
+
+    // A fresh tree from the compact form, every call builds new nodes
+    static List<Statement> decode(ByteBuffer buffer) {
+        return new Reader(buffer).read();
+    }
+
+    private static byte[] key(byte[] source, boolean optimized) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(new byte[] { (byte) (VERSION >>> 24), (byte) (VERSION >>> 16), (byte) (VERSION >>> 8),
+                    (byte) VERSION, (byte) (optimized ? 1 : 0) });
+            digest.update(source);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to have SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Writes the tree depth first. Names and string literals go in a table at the front, so each distinct string is
+    // stored once and everywhere else is an index.
+    private static class Writer {
+        private final ByteArrayOutputStream nodes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(nodes);
+        private final Map<String, Integer> strings = new HashMap<>();
+        private final List<String> table = new ArrayList<>();
+        private int line = 0;
+
+        byte[] write(List<Statement> statements) throws IOException {
+            writeCount(statements.size());
+            for (Statement statement : statements) {
+                write(statement);
+            }
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(nodes.size() + table.size() * 8);
+            DataOutputStream header = new DataOutputStream(bytes);
+            header.writeInt(table.size());
+            for (String string : table) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                header.writeInt(utf8.length);
+                header.write(utf8);
+            }
+            nodes.writeTo(bytes);
+            return bytes.toByteArray();
+        }
+
+        private void write(Statement statement) throws IOException {
+            switch(statement) {
+                case Statement.PrintStatement printStatement -> {
+                    out.writeByte(PRINT);
+                    writeLine(statement.line);
+                    write(printStatement.expression);
+                }
+                case Statement.ExpressionStatement expressionStatement -> {
+                    out.writeByte(EXPRESSION);
+                    writeLine(statement.line);
+                    write(expressionStatement.expression);
+                }
+                case Statement.VariableStatement variableStatement -> {
+                    out.writeByte(VARIABLE);
+                    writeLine(statement.line);
+                    write(variableStatement.name);
+                    write(variableStatement.initializer);
+                }
+                case Statement.BlockStatement blockStatement -> {
+                    out.writeByte(BLOCK);
+                    writeLine(statement.line);
+                    writeCount(blockStatement.statements.size());
+                    for (Statement inner : blockStatement.statements) {
+                        write(inner);
+                    }
+                }
+                case Statement.IfStatement ifStatement -> {
+                    out.writeByte(IF);
+                    writeLine(statement.line);
+                    write(ifStatement.condition);
+                    write(ifStatement.thenBranch);
+                    write(ifStatement.elseBranch);
+                }
+                case Statement.WhileStatement whileStatement -> {
+                    out.writeByte(WHILE);
+                    writeLine(statement.line);
+                    write(whileStatement.condition);
+                    write(whileStatement.body);
+                }
+                case Statement.ForStatement forStatement -> {
+                    out.writeByte(FOR);
+                    writeLine(statement.line);
+                    write(forStatement.initializer);
+                    write(forStatement.condition);
+                    write(forStatement.increment);
+                    write(forStatement.body);
+                    writeCount(forStatement.hoistedCount);
+
+                    // The counter is always the initializer and the bound the right side of the condition, only the
+                    // rest of a counted loop needs storing
+                    Statement.CountedLoop countedLoop = forStatement.countedLoop;
+                    out.writeBoolean(countedLoop != null);
+                    if (countedLoop != null) {
+                        out.writeByte(countedLoop.comparison.ordinal());
+                        out.writeDouble(countedLoop.step);
+                    }
+                }
+                case Statement.FunctionStatement functionStatement -> {
+                    out.writeByte(FUNCTION);
+                    writeLine(statement.line);
+                    write(functionStatement.name);
+                    writeCount(functionStatement.parameters.size());
+                    for (Token parameter : functionStatement.parameters) {
+                        write(parameter);
+                    }
+                    writeCount(functionStatement.body.size());
+                    for (Statement inner : functionStatement.body) {
+                        write(inner);
+                    }
+                }
+                case Statement.ReturnStatement returnStatement -> {
+                    out.writeByte(RETURN);
+                    writeLine(statement.line);
+                    write(returnStatement.keyword);
+                    write(returnStatement.value);
+                }
+                case null, default -> out.writeByte(0);
+            };
+        }
+
+        private void write(Expression expression) throws IOException {
+            switch (expression) {
+                case Expression.LogicalExpression logicalExpression -> {
+                    out.writeByte(LOGICAL);
+                    write(logicalExpression.left);
+                    write(logicalExpression.operator);
+                    write(logicalExpression.right);
+                }
+                case Expression.AssignmentExpression assignmentExpression -> {
+                    out.writeByte(ASSIGNMENT);
+                    write(assignmentExpression.name);
+                    write(assignmentExpression.value);
+                }
+                case Expression.VariableExpression variableExpression -> {
+                    out.writeByte(VARIABLE_REFERENCE);
+                    write(variableExpression.name);
+                }
+                case Expression.LiteralExpression literalExpression -> {
+                    out.writeByte(LITERAL);
+                    switch (literalExpression.literalValue) {
+                        case Double number -> {
+                            out.writeByte(NUMBER);
+                            out.writeDouble(number);
+                        }
+                        case String string -> {
+                            out.writeByte(STRING);
+                            writeCount(string(string));
+                        }
+                        case Boolean bool -> out.writeByte(bool ? TRUE : FALSE);
+                        case null, default -> out.writeByte(NULL);
+                    }
+                }
+                case Expression.ParenthesesExpression parenthesesExpression -> {
+                    out.writeByte(PARENTHESES);
+                    write(parenthesesExpression.expression);
+                }
+                case Expression.HoistedExpression hoistedExpression -> {
+                    out.writeByte(HOISTED);
+                    writeCount(hoistedExpression.index);
+                    write(hoistedExpression.expression);
+                }
+                case Expression.UnaryExpression unaryExpression -> {
+                    out.writeByte(UNARY);
+                    write(unaryExpression.operator);
+                    write(unaryExpression.right);
+                }
+                case Expression.BinaryExpression binaryExpression -> {
+                    out.writeByte(BINARY);
+                    write(binaryExpression.left);
+                    write(binaryExpression.operator);
+                    write(binaryExpression.right);
+                }
+                case Expression.CallExpression callExpression -> {
+                    out.writeByte(CALL);
+                    write(callExpression.name);
+                    writeCount(callExpression.arguments.size());
+                    for (Expression argument : callExpression.arguments) {
+                        write(argument);
+                    }
+                }
+                case null, default -> out.writeByte(0);
+            }
+        }
+
+        // The tree keeps only names and operators, neither of which has a literal other than a name's own text
+        private void write(Token token) throws IOException {
+            out.writeByte(token.type.ordinal());
+            writeLine(token.line);
+            writeCount(string(token.text));
+        }
+
+        // Stored as the distance from the line written before, mostly a single byte
+        private void writeLine(int next) throws IOException {
+            int delta = next - line;
+            writeCount((delta << 1) ^ (delta >> 31));
+            line = next;
+        }
+
+        // A non negative number in as few bytes as it needs, seven bits to a byte, the high bit set on all but the last
+        private void writeCount(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            out.writeByte(value);
+        }
+
+        private int string(String string) {
+            return strings.computeIfAbsent(string, s -> {
+                table.add(s);
+                return table.size() - 1;
+            });
+        }
+    }
+
+    // Rebuilds the tree straight from the mapped file
+    private static class Reader {
+        private final ByteBuffer in;
+        private String[] strings;
+        private int line = 0;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        List<Statement> read() {
+            strings = new String[in.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                byte[] utf8 = new byte[in.getInt()];
+                in.get(utf8);
+                strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            }
+
+            int count = count();
+            List<Statement> statements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                statements.add(statement());
+            }
+            if (in.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes in cache");
+            }
+            return statements;
+        }
+
+        private Statement statement() {
+            byte tag = in.get();
+            return switch (tag) {
+                case 0 -> null;
+                case PRINT -> new Statement.PrintStatement(line(), expression());
+                case EXPRESSION -> new Statement.ExpressionStatement(line(), expression());
+                case VARIABLE -> new Statement.VariableStatement(line(), token(), expression());
+                case BLOCK -> {
+                    int line = line();
+                    int count = count();
+                    List<Statement> statements = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        statements.add(statement());
+                    }
+                    yield new Statement.BlockStatement(line, statements);
+                }
+                case IF -> new Statement.IfStatement(line(), expression(), statement(), statement());
+                case WHILE -> new Statement.WhileStatement(line(), expression(), statement());
+                case FOR -> {
+                    Statement.ForStatement loop = new Statement.ForStatement(line(), statement(), expression(), expression(),
+                            statement());
+                    loop.hoistedCount = count();
+                    if (in.get() != 0) {
+                        TokenType comparison = TOKEN_TYPES[in.get()];
+                        double step = in.getDouble();
+                        loop.countedLoop = new Statement.CountedLoop((Statement.VariableStatement) loop.initializer,
+                                comparison, ((Expression.BinaryExpression) loop.condition).right, step);
+                    }
+                    yield loop;
+                }
+                case FUNCTION -> {
+                    int line = line();
+                    Token name = token();
+                    int count = count();
+                    List<Token> parameters = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        parameters.add(token());
+                    }
+                    count = count();
+                    List<Statement> body = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        body.add(statement());
+                    }
+                    yield new Statement.FunctionStatement(line, name, parameters, body);
+                }
+                case RETURN -> new Statement.ReturnStatement(line(), token(), expression());
+                default -> throw new IllegalArgumentException("Unknown statement tag " + tag);
+            };
+        }
+
+        private Expression expression() {
+            byte tag = in.get();
+            return switch (tag) {
+                case 0 -> null;
+                case LOGICAL -> new Expression.LogicalExpression(expression(), token(), expression());
+                case ASSIGNMENT -> new Expression.AssignmentExpression(token(), expression());
+                case VARIABLE_REFERENCE -> new Expression.VariableExpression(token());
+                case LITERAL -> new Expression.LiteralExpression(switch (in.get()) {
+                    case NULL -> null;
+                    case NUMBER -> in.getDouble();
+                    case STRING -> strings[count()];
+                    case TRUE -> true;
+                    case FALSE -> false;
+                    default -> throw new IllegalArgumentException("Unknown literal tag");
+                });
+                case PARENTHESES -> new Expression.ParenthesesExpression(expression());
+                case HOISTED -> {
+                    int index = count();
+                    yield new Expression.HoistedExpression(expression(), index);
+                }
+                case UNARY -> new Expression.UnaryExpression(token(), expression());
+                case BINARY -> new Expression.BinaryExpression(expression(), token(), expression());
+                case CALL -> {
+                    Token name = token();
+                    int count = count();
+                    List<Expression> arguments = new ArrayList<>(count);
+                    for (int i = 0; i < count; i++) {
+                        arguments.add(expression());
+                    }
+                    yield new Expression.CallExpression(name, arguments);
+                }
+                default -> throw new IllegalArgumentException("Unknown expression tag " + tag);
+            };
+        }
+
+        private Token token() {
+            TokenType type = TOKEN_TYPES[in.get()];
+            int line = line();
+            String text = strings[count()];
+            return type == TokenType.IDENTIFIER ? new Token(type, text, line, text) : new Token(type, text, line);
+        }
+
+        private int line() {
+            int delta = count();
+            line += (delta >>> 1) ^ -(delta & 1);
+            return line;
+        }
+
+        private int count() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
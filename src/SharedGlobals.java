@@ -0,0 +1,63 @@
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Global variables shared by every run of a resolved tree that is given this store, for scripts that share state on
+// purpose. Each read and each write of a variable is atomic and seen at once by every thread, but an update such as
+// x = x + 1 is a read and a write, and two threads doing it at once can lose one. Every variable sits on a stripe of
+// the array of its own, a cache line apart from the next, so threads writing different variables do not slow each
+// other down. Numbers are kept boxed, the interpreter's unboxed paths would read a slot and then trust what it read.
+//
+// The store holds the globals the resolver gave slots to and does not grow, the tree must be resolved in full before
+// the store is created.
+public class SharedGlobals extends Environment {
+    // References per stripe, 64 bytes with compressed references
+    private static final int STRIPE = 16;
+
+    private final int size;
+    private final AtomicReferenceArray<Object> values;
+
+    public SharedGlobals(int size) {
+        super(null, 0);
+        this.size = size;
+        this.values = new AtomicReferenceArray<>(size * STRIPE);
+    }
+
+    @Override
+    int size() {
+        return size;
+    }
+
+    @Override
+    void define(int slot, Object value) {
+        store(slot, value);
+    }
+
+    @Override
+    void defineDouble(int slot, double value) {
+        store(slot, value);
+    }
+
+    @Override
+    Object load(int slot) {
+        return values.get(slot * STRIPE);
+    }
+
+    @Override
+    boolean holdsDouble(int slot) {
+        return false;
+    }
+
+    @Override
+    double loadDouble(int slot) {
+        return (double) load(slot);
+    }
+
+    @Override
+    void storeDouble(int slot, double value) {
+        store(slot, value);
+    }
+
+    @Override
+    void store(int slot, Object value) {
+        values.set(slot * STRIPE, value);
+    }
+}
@@ -0,0 +1,474 @@
+import java.util.Arrays;
+import java.util.List;
+
+// Runs one program over a batch of rows at once. Every variable and every intermediate value is a column holding the
+// value for each row, so the tree is walked once per batch rather than once per row, and arithmetic on numbers runs as
+// a plain loop over double arrays that the JIT can vectorize. Rows that take different paths through if and while
+// statements are told apart by masks: a statement runs for the rows whose mask entry is set and leaves the others as
+// they were. Each row prints into its own buffer and fails on its own, so the result for every row is the same as
+// running the program once with that row's starting values.
+public class SpartieBatchInterpreter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    // The values of one variable or expression across the rows. A numeric column holds every row unboxed, any other
+    // column holds every row, numbers included, boxed. A column is never changed once built: assignment blends a new
+    // column and puts it in the slot, so a column read earlier in the same expression keeps its values.
+    private static final class Column {
+        final double[] numbers;
+        final Object[] values;
+
+        Column(double[] numbers) {
+            this.numbers = numbers;
+            this.values = null;
+        }
+
+        Column(Object[] values) {
+            this.numbers = null;
+            this.values = values;
+        }
+
+        boolean isNumeric() {
+            return numbers != null;
+        }
+
+        Object get(int row) {
+            return numbers != null ? (Object) numbers[row] : values[row];
+        }
+    }
+
+    // Columns of the variables of one scope, in the slots the SpartieResolver gave them
+    private static final class Frame {
+        final Frame enclosing;
+        Column[] slots;
+
+        Frame(Frame enclosing, int size) {
+            this.enclosing = enclosing;
+            this.slots = new Column[size];
+        }
+    }
+
+    private final int size;
+    private Frame frame = new Frame(null, 8);
+
+    // Output and failure of each row. A failed row takes no further part in the batch.
+    private final StringBuilder[] outputs;
+    private final SpartieError[] failures;
+    private final boolean[] failed;
+
+    public SpartieBatchInterpreter(int size) {
+        this.size = size;
+        this.outputs = new StringBuilder[size];
+        this.failures = new SpartieError[size];
+        this.failed = new boolean[size];
+        for (int row = 0; row < size; row++) {
+            outputs[row] = new StringBuilder();
+        }
+    }
+
+    // Sets the starting value of a global variable, one value per row, in a slot from SpartieResolver.declareGlobal
+    public void defineGlobal(int slot, Object[] values) {
+        define(frame, slot, normalize(new Column(values.clone()), everyRow()));
+    }
+
+    public void run(List<Statement> statements) {
+        boolean[] mask = everyRow();
+        for (Statement statement : statements) {
+            execute(statement, mask);
+        }
+    }
+
+    public String output(int row) {
+        return outputs[row].toString();
+    }
+
+    // The error the row stopped on, or null if it ran to the end
+    public SpartieError failure(int row) {
+        return failures[row];
+    }
+
+    // Statement Implementation
+    private void execute(Statement statement, boolean[] mask) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> executePrint(printStatement, mask);
+            case Statement.ExpressionStatement expressionStatement -> evaluate(expressionStatement.expression, mask);
+            case Statement.VariableStatement variableStatement -> executeVariable(variableStatement, mask);
+            case Statement.BlockStatement blockStatement -> executeBlock(blockStatement, mask);
+            case Statement.IfStatement ifStatement -> executeIf(ifStatement, mask);
+            case Statement.WhileStatement whileStatement -> executeWhile(whileStatement, mask);
+            case Statement.ForStatement forStatement -> executeFor(forStatement, mask);
+            case null, default -> {}
+        };
+    }
+
+    private void executePrint(Statement.PrintStatement statement, boolean[] mask) {
+        Column value = evaluate(statement.expression, mask);
+        for (int row = 0; row < size; row++) {
+            if (!isActive(mask, row)) continue;
+
+            if (value.isNumeric()) {
+                outputs[row].append(value.numbers[row]).append(LINE_SEPARATOR);
+            }
+            else if (value.values[row] == null) {
+                // Printing null ends a single run with a NullPointerException, whose exit code is 1
+                fail(row, new SpartieError("Cannot print null", 1));
+            }
+            else {
+                outputs[row].append(value.values[row]).append(LINE_SEPARATOR);
+            }
+        }
+    }
+
+    private void executeVariable(Statement.VariableStatement statement, boolean[] mask) {
+        Column value = statement.initializer == null
+                ? new Column(new Object[size])
+                : evaluate(statement.initializer, mask);
+
+        // The rows that do not run the declaration keep the old value of the slot, null if it had none
+        Column previous = statement.slot < frame.slots.length ? frame.slots[statement.slot] : null;
+        define(frame, statement.slot, blend(mask, value, previous != null ? previous : new Column(new Object[size])));
+    }
+
+    private void executeBlock(Statement.BlockStatement statement, boolean[] mask) {
+        if (statement.slotCount == 0) {
+            for (Statement inner : statement.statements) {
+                execute(inner, mask);
+            }
+            return;
+        }
+
+        frame = new Frame(frame, statement.slotCount);
+        for (Statement inner : statement.statements) {
+            execute(inner, mask);
+        }
+        frame = frame.enclosing;
+    }
+
+    private void executeIf(Statement.IfStatement statement, boolean[] mask) {
+        Column condition = evaluate(statement.condition, mask);
+
+        // Split the rows by their condition, each branch runs for its own rows only
+        boolean[] thenRows = new boolean[size];
+        boolean[] elseRows = new boolean[size];
+        boolean anyThen = false;
+        boolean anyElse = false;
+        for (int row = 0; row < size; row++) {
+            if (!isActive(mask, row)) continue;
+
+            if (isTrue(condition, row)) {
+                thenRows[row] = true;
+                anyThen = true;
+            }
+            else {
+                elseRows[row] = true;
+                anyElse = true;
+            }
+        }
+
+        if (anyThen) {
+            execute(statement.thenBranch, thenRows);
+        }
+        if (anyElse && statement.elseBranch != null) {
+            execute(statement.elseBranch, elseRows);
+        }
+    }
+
+    private void executeWhile(Statement.WhileStatement statement, boolean[] mask) {
+        // Rows leave the loop one by one, the loop ends when none is left
+        boolean[] running = mask.clone();
+        while (narrow(running, evaluate(statement.condition, running))) {
+            execute(statement.body, running);
+        }
+    }
+
+    private void executeFor(Statement.ForStatement statement, boolean[] mask) {
+        if (statement.slotCount > 0) {
+            frame = new Frame(frame, statement.slotCount);
+        }
+
+        execute(statement.initializer, mask);
+        boolean[] running = mask.clone();
+        while (narrow(running, evaluate(statement.condition, running))) {
+            execute(statement.body, running);
+            if (statement.increment != null) {
+                evaluate(statement.increment, running);
+            }
+        }
+
+        if (statement.slotCount > 0) {
+            frame = frame.enclosing;
+        }
+    }
+
+    // Clears the rows whose condition is false or that failed, and tells whether any row is left
+    private boolean narrow(boolean[] rows, Column condition) {
+        boolean any = false;
+        for (int row = 0; row < size; row++) {
+            rows[row] = isActive(rows, row) && isTrue(condition, row);
+            any |= rows[row];
+        }
+        return any;
+    }
+
+    // Expression Implementation
+    private Column evaluate(Expression expression, boolean[] mask) {
+        return switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> evaluateLogical(logicalExpression, mask);
+            case Expression.AssignmentExpression assignmentExpression -> evaluateAssign(assignmentExpression, mask);
+            case Expression.VariableExpression variableExpression -> evaluateVariable(variableExpression);
+            case Expression.LiteralExpression literalExpression -> evaluateLiteral(literalExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> evaluate(parenthesesExpression.expression, mask);
+            // Hoisting saves nothing when each evaluation already covers the whole batch
+            case Expression.HoistedExpression hoistedExpression -> evaluate(hoistedExpression.expression, mask);
+            case Expression.UnaryExpression unaryExpression -> evaluateUnary(unaryExpression, mask);
+            case Expression.BinaryExpression binaryExpression -> evaluateBinary(binaryExpression, mask);
+            case Expression.CallExpression callExpression -> evaluateCall(callExpression, mask);
+            case null, default -> new Column(new Object[size]);
+        };
+    }
+
+    private Column evaluateLogical(Expression.LogicalExpression expression, boolean[] mask) {
+        Column left = evaluate(expression.left, mask);
+
+        // The right side runs only for the rows the left side does not decide
+        boolean[] rightRows = new boolean[size];
+        boolean any = false;
+        for (int row = 0; row < size; row++) {
+            boolean decided = expression.operator.type == TokenType.OR ? isTrue(left, row) : !isTrue(left, row);
+            rightRows[row] = isActive(mask, row) && !decided;
+            any |= rightRows[row];
+        }
+        if (!any) {
+            return left;
+        }
+
+        Column right = evaluate(expression.right, rightRows);
+        Object[] values = new Object[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = rightRows[row] ? right.get(row) : left.get(row);
+        }
+        return normalize(new Column(values), mask);
+    }
+
+    // Programs that declare functions are not run here, so a call can only be to a function that does not exist
+    private Column evaluateCall(Expression.CallExpression expression, boolean[] mask) {
+        for (int row = 0; row < size; row++) {
+            if (isActive(mask, row)) {
+                fail(row, new SpartieError(expression.error, ErrorCode.INTERPRET_ERROR));
+            }
+        }
+        return new Column(new Object[size]);
+    }
+
+    private Column evaluateAssign(Expression.AssignmentExpression expression, boolean[] mask) {
+        Column value = evaluate(expression.value, mask);
+
+        // The resolver could not find a declaration for the variable
+        if (expression.depth < 0) {
+            for (int row = 0; row < size; row++) {
+                if (isActive(mask, row)) {
+                    fail(row, new SpartieError("Undefined variable: " + expression.name.text, ErrorCode.INTERPRET_ERROR));
+                }
+            }
+            return value;
+        }
+
+        Frame target = ancestor(expression.depth);
+        target.slots[expression.slot] = blend(mask, value, target.slots[expression.slot]);
+        return value;
+    }
+
+    private Column evaluateVariable(Expression.VariableExpression expression) {
+        // Variables that were never declared evaluate to null
+        if (expression.depth < 0) {
+            return new Column(new Object[size]);
+        }
+        return ancestor(expression.depth).slots[expression.slot];
+    }
+
+    private Column evaluateLiteral(Expression.LiteralExpression expression) {
+        if (expression.literalValue instanceof Double number) {
+            double[] numbers = new double[size];
+            Arrays.fill(numbers, number);
+            return new Column(numbers);
+        }
+
+        Object[] values = new Object[size];
+        Arrays.fill(values, expression.literalValue);
+        return new Column(values);
+    }
+
+    private Column evaluateUnary(Expression.UnaryExpression expression, boolean[] mask) {
+        Column right = evaluate(expression.right, mask);
+
+        if (expression.operator.type == TokenType.NOT) {
+            Object[] values = new Object[size];
+            for (int row = 0; row < size; row++) {
+                values[row] = !isTrue(right, row);
+            }
+            return new Column(values);
+        }
+
+        if (right.isNumeric()) {
+            double[] numbers = new double[size];
+            for (int row = 0; row < size; row++) {
+                numbers[row] = -right.numbers[row];
+            }
+            return new Column(numbers);
+        }
+
+        Object[] values = new Object[size];
+        for (int row = 0; row < size; row++) {
+            if (!isActive(mask, row)) continue;
+            try {
+                values[row] = SpartieRuntime.negate(expression.operator, right.values[row]);
+            } catch (SpartieError e) {
+                fail(row, e);
+            }
+        }
+        return normalize(new Column(values), mask);
+    }
+
+    private Column evaluateBinary(Expression.BinaryExpression expression, boolean[] mask) {
+        Column left = evaluate(expression.left, mask);
+        Column right = evaluate(expression.right, mask);
+
+        // Numbers on both sides never fail, so every row is computed, masked or not, in a loop without branches
+        if (left.isNumeric() && right.isNumeric()) {
+            double[] l = left.numbers;
+            double[] r = right.numbers;
+
+            switch (expression.operator.type) {
+                case ADD, SUBTRACT, MULTIPLY, DIVIDE -> {
+                    return new Column(arithmetic(expression.operator.type, l, r));
+                }
+                case EQUIVALENT, NOT_EQUAL, GREATER_THAN, GREATER_EQUAL, LESS_THAN, LESS_EQUAL -> {
+                    return new Column(compare(expression.operator.type, l, r));
+                }
+                default -> {}
+            }
+        }
+
+        // Anything else goes row by row through the shared semantics, errors fail just their row
+        Object[] values = new Object[size];
+        for (int row = 0; row < size; row++) {
+            if (!isActive(mask, row)) continue;
+            try {
+                values[row] = SpartieRuntime.binary(expression.operator, left.get(row), right.get(row));
+            } catch (SpartieError e) {
+                fail(row, e);
+            }
+        }
+        return normalize(new Column(values), mask);
+    }
+
+    private double[] arithmetic(TokenType operator, double[] l, double[] r) {
+        double[] result = new double[size];
+        switch (operator) {
+            case ADD -> { for (int row = 0; row < size; row++) result[row] = l[row] + r[row]; }
+            case SUBTRACT -> { for (int row = 0; row < size; row++) result[row] = l[row] - r[row]; }
+            case MULTIPLY -> { for (int row = 0; row < size; row++) result[row] = l[row] * r[row]; }
+            default -> { for (int row = 0; row < size; row++) result[row] = l[row] / r[row]; }
+        }
+        return result;
+    }
+
+    private Object[] compare(TokenType operator, double[] l, double[] r) {
+        Object[] result = new Object[size];
+        switch (operator) {
+            // Same rules as Double.equals, so NaN equals itself and 0.0 does not equal -0.0
+            case EQUIVALENT -> { for (int row = 0; row < size; row++) result[row] = Double.compare(l[row], r[row]) == 0; }
+            case NOT_EQUAL -> { for (int row = 0; row < size; row++) result[row] = Double.compare(l[row], r[row]) != 0; }
+            case GREATER_THAN -> { for (int row = 0; row < size; row++) result[row] = l[row] > r[row]; }
+            case GREATER_EQUAL -> { for (int row = 0; row < size; row++) result[row] = l[row] >= r[row]; }
+            case LESS_THAN -> { for (int row = 0; row < size; row++) result[row] = l[row] < r[row]; }
+            default -> { for (int row = 0; row < size; row++) result[row] = l[row] <= r[row]; }
+        }
+        return result;
+    }
+
+    // Helper Methods
+
+    // The new value for the rows in the mask and the old value for the rest
+    private Column blend(boolean[] mask, Column value, Column old) {
+        if (isEveryRow(mask)) {
+            return value;
+        }
+
+        if (value.isNumeric() && old.isNumeric()) {
+            double[] numbers = new double[size];
+            for (int row = 0; row < size; row++) {
+                numbers[row] = mask[row] ? value.numbers[row] : old.numbers[row];
+            }
+            return new Column(numbers);
+        }
+
+        Object[] values = new Object[size];
+        for (int row = 0; row < size; row++) {
+            values[row] = mask[row] ? value.get(row) : old.get(row);
+        }
+        return normalize(new Column(values), everyRow());
+    }
+
+    // A boxed column whose rows in the mask are all numbers is turned back into a numeric column. The rows outside the
+    // mask are never read, so they are free to become 0.
+    private Column normalize(Column column, boolean[] mask) {
+        if (column.isNumeric()) {
+            return column;
+        }
+
+        double[] numbers = new double[size];
+        for (int row = 0; row < size; row++) {
+            if (!isActive(mask, row)) continue;
+            if (!(column.values[row] instanceof Double number)) {
+                return column;
+            }
+            numbers[row] = number;
+        }
+        return new Column(numbers);
+    }
+
+    private void define(Frame frame, int slot, Column value) {
+        // The global frame grows as new top level declarations are resolved
+        if (slot >= frame.slots.length) {
+            frame.slots = Arrays.copyOf(frame.slots, Math.max(slot + 1, frame.slots.length * 2));
+        }
+        frame.slots[slot] = value;
+    }
+
+    private Frame ancestor(int depth) {
+        Frame target = frame;
+        for (int i = 0; i < depth; i++) {
+            target = target.enclosing;
+        }
+        return target;
+    }
+
+    private boolean isActive(boolean[] mask, int row) {
+        return mask[row] && !failed[row];
+    }
+
+    private boolean isTrue(Column column, int row) {
+        return column.isNumeric() || SpartieRuntime.isTrue(column.values[row]);
+    }
+
+    // Only the first error of a row counts, it is the one a single run would have stopped on
+    private void fail(int row, SpartieError error) {
+        if (!failed[row]) {
+            failed[row] = true;
+            failures[row] = error;
+        }
+    }
+
+    private boolean isEveryRow(boolean[] mask) {
+        for (boolean active : mask) {
+            if (!active) return false;
+        }
+        return true;
+    }
+
+    private boolean[] everyRow() {
+        boolean[] mask = new boolean[size];
+        Arrays.fill(mask, true);
+        return mask;
+    }
+}
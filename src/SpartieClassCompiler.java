@@ -0,0 +1,669 @@
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Translates a program into a JVM class with a static run method and loads it as a hidden class, so the JIT compiles
+// Spartie code like any other Java method. Every variable becomes a JVM local of a fixed type, which works for programs
+// where each variable only ever holds one kind of value. Anything else (null, mixed types, operations that would be
+// runtime errors) is left to the SpartieInterpreter.
+//
+// HotSpot never compiles a method of more than 8000 bytes of bytecode (HugeMethodLimit), which would leave a long
+// program running in the bytecode interpreter. So a list of statements too big for one method, the top level or the
+// body of a loop, is split into methods of its own that the list's method calls in turn. A variable used by a method
+// other than the one that declares it becomes a static field instead of a local.
+public class SpartieClassCompiler {
+    // Thrown for constructs the compiler leaves to the interpreter
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private enum Type {
+        NUMBER, STRING, BOOLEAN;
+
+        int slots() {
+            return this == NUMBER ? 2 : 1;
+        }
+    }
+
+    // A variable is in a field when it has one, otherwise in the local
+    private record Variable(int local, Type type, String field) {}
+
+    // Statements run by a method of their own, or a statement too big for any method that is left in the method of
+    // the list it is in
+    private record Run(List<Statement> statements, boolean method) {}
+
+    // Where a variable was declared while the methods are planned
+    private record Declaration(Statement.VariableStatement statement, int method) {}
+
+    private static final String RUNTIME = "SpartieClassCompiler";
+    private static final String CLASS_NAME = "SpartieScript";
+
+    // Bytes of code a method may hold, and the most one node of the tree can compile to. A method is sized by counting
+    // nodes, so its code is usually a good deal smaller than this.
+    private static final int METHOD_SIZE = 8000;
+    private static final int NODE_SIZE = 16;
+
+    private final ClassFileWriter writer = new ClassFileWriter(CLASS_NAME);
+
+    // The runs of every list of statements too big for one method, and the variables that have to be fields
+    private final Map<List<Statement>, List<Run>> runs = new IdentityHashMap<>();
+    private final Map<Statement.VariableStatement, Boolean> fields = new IdentityHashMap<>();
+
+    // Innermost scope is last
+    private final List<Map<String, Declaration>> declarations = new ArrayList<>();
+    private int plannedMethods = 0;
+
+    // Innermost scope is last
+    private final List<Map<String, Variable>> scopes = new ArrayList<>();
+    private int nextLocal = 0;
+    private int methodCount = 0;
+    private int fieldCount = 0;
+
+    // Returns the compiled program, or null if it uses something the compiler does not support
+    public Runnable compile(List<Statement> statements) {
+        MethodHandle run;
+        try {
+            declarations.add(new HashMap<>());
+            plan(statements, 0, false);
+
+            scopes.add(new HashMap<>());
+            writer.startMethod("run");
+            compileStatements(statements);
+            writer.emit(ClassFileWriter.RETURN, 0);
+            writer.endMethod();
+
+            byte[] bytes = writer.toByteArray();
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            run = lookup.findStatic(lookup.lookupClass(), "run", MethodType.methodType(void.class));
+        } catch (Unsupported | ClassFileWriter.LimitExceeded e) {
+            return null;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Generated class could not be loaded", e);
+        }
+
+        return () -> {
+            try {
+                run.invokeExact();
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        };
+    }
+
+    // Planning
+
+    // Decides which lists of statements are split into methods, in the method given, and which variables are used by a
+    // method other than their own. A list that is a branch of a statement too big for one method is always given
+    // methods of its own, or the statement's branches together could outgrow the method it is left in.
+    private void plan(List<Statement> statements, int method, boolean branch) {
+        if (!branch && size(statements) <= METHOD_SIZE) {
+            for (Statement statement : statements) {
+                plan(statement, method);
+            }
+            return;
+        }
+
+        // Consecutive statements share a method for as long as they fit in one
+        List<Run> split = new ArrayList<>();
+        List<Statement> gathered = new ArrayList<>();
+        int gatheredSize = 0;
+        for (Statement statement : statements) {
+            int size = size(statement);
+            if (!gathered.isEmpty() && (gatheredSize + size > METHOD_SIZE || size > METHOD_SIZE)) {
+                split.add(new Run(gathered, true));
+                gathered = new ArrayList<>();
+                gatheredSize = 0;
+            }
+            if (size > METHOD_SIZE) {
+                split.add(new Run(List.of(statement), false));
+            }
+            else {
+                gathered.add(statement);
+                gatheredSize += size;
+            }
+        }
+        if (!gathered.isEmpty()) {
+            split.add(new Run(gathered, true));
+        }
+        runs.put(statements, split);
+
+        for (Run run : split) {
+            int runMethod = run.method() ? ++plannedMethods : method;
+            for (Statement statement : run.statements()) {
+                plan(statement, runMethod);
+            }
+        }
+    }
+
+    private void plan(Statement statement, int method) {
+        switch (statement) {
+            case Statement.PrintStatement printStatement -> plan(printStatement.expression, method);
+            case Statement.ExpressionStatement expressionStatement -> plan(expressionStatement.expression, method);
+            case Statement.VariableStatement variableStatement -> {
+                plan(variableStatement.initializer, method);
+                declarations.getLast().put(variableStatement.name.text, new Declaration(variableStatement, method));
+            }
+            case Statement.BlockStatement blockStatement -> plan(blockStatement, method, false);
+            case Statement.IfStatement ifStatement -> {
+                boolean split = size(ifStatement) > METHOD_SIZE;
+                plan(ifStatement.condition, method);
+                planBranch(ifStatement.thenBranch, method, split);
+                planBranch(ifStatement.elseBranch, method, split);
+            }
+            case Statement.WhileStatement whileStatement -> {
+                plan(whileStatement.condition, method);
+                planBranch(whileStatement.body, method, size(whileStatement) > METHOD_SIZE);
+            }
+            case Statement.ForStatement forStatement -> {
+                declarations.add(new HashMap<>());
+                plan(forStatement.initializer, method);
+                plan(forStatement.condition, method);
+                planBranch(forStatement.body, method, size(forStatement) > METHOD_SIZE);
+                plan(forStatement.increment, method);
+                declarations.removeLast();
+            }
+            case null, default -> {}
+        }
+    }
+
+    private void plan(Statement.BlockStatement statement, int method, boolean branch) {
+        declarations.add(new HashMap<>());
+        plan(statement.statements, method, branch);
+        declarations.removeLast();
+    }
+
+    private void planBranch(Statement statement, int method, boolean split) {
+        if (split && statement instanceof Statement.BlockStatement blockStatement) {
+            plan(blockStatement, method, true);
+        }
+        else {
+            plan(statement, method);
+        }
+    }
+
+    private void plan(Expression expression, int method) {
+        switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> {
+                plan(logicalExpression.left, method);
+                plan(logicalExpression.right, method);
+            }
+            case Expression.AssignmentExpression assignmentExpression -> {
+                plan(assignmentExpression.value, method);
+                use(assignmentExpression.name.text, method);
+            }
+            case Expression.VariableExpression variableExpression -> use(variableExpression.name.text, method);
+            case Expression.ParenthesesExpression parenthesesExpression -> plan(parenthesesExpression.expression, method);
+            case Expression.HoistedExpression hoistedExpression -> plan(hoistedExpression.expression, method);
+            case Expression.UnaryExpression unaryExpression -> plan(unaryExpression.right, method);
+            case Expression.BinaryExpression binaryExpression -> {
+                plan(binaryExpression.left, method);
+                plan(binaryExpression.right, method);
+            }
+            case null, default -> {}
+        }
+    }
+
+    private void use(String name, int method) {
+        for (int i = declarations.size() - 1; i >= 0; i--) {
+            Declaration declaration = declarations.get(i).get(name);
+            if (declaration != null) {
+                if (declaration.method() != method) {
+                    fields.put(declaration.statement(), true);
+                }
+                return;
+            }
+        }
+    }
+
+    // Bytes of code the statements compile to at most
+    private static int size(List<Statement> statements) {
+        int size = 0;
+        for (Statement statement : statements) {
+            size += size(statement);
+        }
+        return size;
+    }
+
+    private static int size(Statement statement) {
+        return switch (statement) {
+            case Statement.PrintStatement printStatement -> NODE_SIZE + size(printStatement.expression);
+            case Statement.ExpressionStatement expressionStatement -> NODE_SIZE + size(expressionStatement.expression);
+            case Statement.VariableStatement variableStatement -> NODE_SIZE + size(variableStatement.initializer);
+            case Statement.BlockStatement blockStatement -> NODE_SIZE + size(blockStatement.statements);
+            case Statement.IfStatement ifStatement ->
+                    NODE_SIZE + size(ifStatement.condition) + size(ifStatement.thenBranch) + size(ifStatement.elseBranch);
+            case Statement.WhileStatement whileStatement ->
+                    NODE_SIZE + size(whileStatement.condition) + size(whileStatement.body);
+            case Statement.ForStatement forStatement -> NODE_SIZE + size(forStatement.initializer)
+                    + size(forStatement.condition) + size(forStatement.body) + size(forStatement.increment);
+            case null -> 0;
+            default -> NODE_SIZE;
+        };
+    }
+
+    private static int size(Expression expression) {
+        return switch (expression) {
+            case Expression.LogicalExpression logicalExpression ->
+                    NODE_SIZE + size(logicalExpression.left) + size(logicalExpression.right);
+            case Expression.AssignmentExpression assignmentExpression -> NODE_SIZE + size(assignmentExpression.value);
+            case Expression.ParenthesesExpression parenthesesExpression -> NODE_SIZE + size(parenthesesExpression.expression);
+            case Expression.HoistedExpression hoistedExpression -> NODE_SIZE + size(hoistedExpression.expression);
+            case Expression.UnaryExpression unaryExpression -> NODE_SIZE + size(unaryExpression.right);
+            case Expression.BinaryExpression binaryExpression ->
+                    NODE_SIZE + size(binaryExpression.left) + size(binaryExpression.right);
+            case null -> 0;
+            default -> NODE_SIZE;
+        };
+    }
+
+    // Compilation
+
+    // In the method being written, or split into the methods planned for the list
+    private void compileStatements(List<Statement> statements) {
+        List<Run> split = runs.get(statements);
+        if (split == null) {
+            for (Statement statement : statements) {
+                compile(statement);
+            }
+            return;
+        }
+
+        for (Run run : split) {
+            if (!run.method()) {
+                compile(run.statements().getFirst());
+                continue;
+            }
+
+            // Locals are numbered from zero again in the new method, and the method it interrupts goes on with its own
+            String name = "m" + ++methodCount;
+            int locals = nextLocal;
+            nextLocal = 0;
+            writer.startMethod(name);
+            for (Statement statement : run.statements()) {
+                compile(statement);
+            }
+            writer.emit(ClassFileWriter.RETURN, 0);
+            writer.endMethod();
+            nextLocal = locals;
+            writer.emitInvoke(name);
+        }
+    }
+
+    private void compile(Statement statement) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> compilePrintStatement(printStatement);
+            case Statement.ExpressionStatement expressionStatement -> compileExpressionStatement(expressionStatement);
+            case Statement.VariableStatement variableStatement -> compileVariableStatement(variableStatement);
+            case Statement.BlockStatement blockStatement -> compileBlockStatement(blockStatement);
+            case Statement.IfStatement ifStatement -> compileIfStatement(ifStatement);
+            case Statement.WhileStatement whileStatement -> compileWhileStatement(whileStatement);
+            case Statement.ForStatement forStatement -> compileForStatement(forStatement);
+            case null -> {}
+            default -> throw new Unsupported();
+        };
+    }
+
+    private Type compile(Expression expression) {
+        return switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> compileLogical(logicalExpression);
+            case Expression.AssignmentExpression assignmentExpression -> compileAssign(assignmentExpression);
+            case Expression.VariableExpression variableExpression -> compileVariable(variableExpression);
+            case Expression.LiteralExpression literalExpression -> compileLiteral(literalExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> compile(parenthesesExpression.expression);
+            // Compiled code evaluates a hoisted expression in place
+            case Expression.HoistedExpression hoistedExpression -> compile(hoistedExpression.expression);
+            case Expression.UnaryExpression unaryExpression -> compileUnary(unaryExpression);
+            case Expression.BinaryExpression binaryExpression -> compileBinary(binaryExpression);
+            case null, default -> throw new Unsupported();
+        };
+    }
+
+    // Statement Implementation
+    private void compileWhileStatement(Statement.WhileStatement statement) {
+        ClassFileWriter.Label start = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+        writer.placeLabel(start);
+        compileCondition(statement.condition, end);
+        compile(statement.body);
+        writer.emitJump(ClassFileWriter.GOTO, start, 0);
+        writer.placeLabel(end);
+    }
+
+    private void compileForStatement(Statement.ForStatement statement) {
+        // The initializer's variable belongs to the loop
+        scopes.add(new HashMap<>());
+        compile(statement.initializer);
+
+        ClassFileWriter.Label start = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+        writer.placeLabel(start);
+        compileCondition(statement.condition, end);
+        compile(statement.body);
+        if (statement.increment != null) {
+            compile(new Statement.ExpressionStatement(statement.line, statement.increment));
+        }
+        writer.emitJump(ClassFileWriter.GOTO, start, 0);
+        writer.placeLabel(end);
+        scopes.removeLast();
+    }
+
+    private void compileIfStatement(Statement.IfStatement statement) {
+        ClassFileWriter.Label elseBranch = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+        compileCondition(statement.condition, elseBranch);
+        compile(statement.thenBranch);
+        writer.emitJump(ClassFileWriter.GOTO, end, 0);
+        writer.placeLabel(elseBranch);
+        compile(statement.elseBranch);
+        writer.placeLabel(end);
+    }
+
+    private void compileBlockStatement(Statement.BlockStatement statement) {
+        scopes.add(new HashMap<>());
+        compileStatements(statement.statements);
+        scopes.removeLast();
+    }
+
+    private void compileVariableStatement(Statement.VariableStatement statement) {
+        // A variable without a value starts as null, which has no JVM type here
+        if (statement.initializer == null) {
+            throw new Unsupported();
+        }
+
+        Type type = compile(statement.initializer);
+
+        // Declared after the initializer so that 'var a = a;' refers to an outer 'a'. Declaring the same name again
+        // gets a fresh local or field, since the new variable may hold a different type.
+        Variable variable;
+        if (fields.containsKey(statement)) {
+            variable = new Variable(-1, type, "v" + fieldCount++);
+            writer.addField(variable.field(), descriptor(type));
+        }
+        else {
+            variable = new Variable(nextLocal, type, null);
+            nextLocal += type.slots();
+            writer.useLocals(nextLocal);
+        }
+        scopes.getLast().put(statement.name.text, variable);
+
+        store(variable);
+    }
+
+    private void compileExpressionStatement(Statement.ExpressionStatement statement) {
+        Type type = compile(statement.expression);
+        pop(type);
+    }
+
+    private void compilePrintStatement(Statement.PrintStatement statement) {
+        Type type = compile(statement.expression);
+        switch (type) {
+            case NUMBER -> writer.emitInvoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "print", "(D)V", -2);
+            case STRING -> writer.emitInvoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "print", "(Ljava/lang/String;)V", -1);
+            case BOOLEAN -> writer.emitInvoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "print", "(Z)V", -1);
+        }
+    }
+
+    // Jump to the label when the condition is false
+    private void compileCondition(Expression condition, ClassFileWriter.Label whenFalse) {
+        Type type = compile(condition);
+
+        // Numbers and strings are always true, but still have to be evaluated
+        if (type != Type.BOOLEAN) {
+            pop(type);
+            return;
+        }
+        writer.emitJump(ClassFileWriter.IFEQ, whenFalse, -1);
+    }
+
+    // Expression Implementation
+    private Type compileLogical(Expression.LogicalExpression expression) {
+        if (compile(expression.left) != Type.BOOLEAN) {
+            throw new Unsupported();
+        }
+
+        // Short-circuit, leaving the left value as the result
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+        writer.emit(ClassFileWriter.DUP, 1);
+        writer.emitJump(expression.operator.type == TokenType.OR ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ, end, -1);
+        writer.emit(ClassFileWriter.POP, -1);
+        if (compile(expression.right) != Type.BOOLEAN) {
+            throw new Unsupported();
+        }
+        writer.placeLabel(end);
+
+        return Type.BOOLEAN;
+    }
+
+    private Type compileAssign(Expression.AssignmentExpression expression) {
+        Variable variable = lookup(expression.name.text);
+        Type type = compile(expression.value);
+        if (type != variable.type()) {
+            throw new Unsupported();
+        }
+
+        // Assignment is an expression, keep a copy of the value as its result
+        writer.emit(type == Type.NUMBER ? ClassFileWriter.DUP2 : ClassFileWriter.DUP, type.slots());
+        store(variable);
+        return type;
+    }
+
+    private Type compileVariable(Expression.VariableExpression expression) {
+        Variable variable = lookup(expression.name.text);
+        if (variable.field() != null) {
+            writer.emitField(ClassFileWriter.GETSTATIC, variable.field(), descriptor(variable.type()), variable.type().slots());
+            return variable.type();
+        }
+        switch (variable.type()) {
+            case NUMBER -> writer.emitLocal(ClassFileWriter.DLOAD, variable.local(), 2);
+            case STRING -> writer.emitLocal(ClassFileWriter.ALOAD, variable.local(), 1);
+            case BOOLEAN -> writer.emitLocal(ClassFileWriter.ILOAD, variable.local(), 1);
+        }
+        return variable.type();
+    }
+
+    private Type compileLiteral(Expression.LiteralExpression expression) {
+        switch (expression.literalValue) {
+            case Double value -> {
+                writer.emitDouble(value);
+                return Type.NUMBER;
+            }
+            case String value -> {
+                writer.emitString(value);
+                return Type.STRING;
+            }
+            case Boolean value -> {
+                writer.emit(value ? ClassFileWriter.ICONST_1 : ClassFileWriter.ICONST_0, 1);
+                return Type.BOOLEAN;
+            }
+            case null, default -> throw new Unsupported();
+        }
+    }
+
+    private Type compileUnary(Expression.UnaryExpression expression) {
+        Type type = compile(expression.right);
+
+        if (expression.operator.type == TokenType.NOT) {
+            if (type == Type.BOOLEAN) {
+                writer.emit(ClassFileWriter.ICONST_1, 1);
+                writer.emit(ClassFileWriter.IXOR, -1);
+            }
+            else {
+                // Numbers and strings are always true
+                pop(type);
+                writer.emit(ClassFileWriter.ICONST_0, 1);
+            }
+            return Type.BOOLEAN;
+        }
+
+        if (type != Type.NUMBER) {
+            throw new Unsupported();
+        }
+        writer.emit(ClassFileWriter.DNEG, 0);
+        return Type.NUMBER;
+    }
+
+    private Type compileBinary(Expression.BinaryExpression expression) {
+        Type left = compile(expression.left);
+        Type right = compile(expression.right);
+        TokenType operator = expression.operator.type;
+
+        if (operator == TokenType.EQUIVALENT || operator == TokenType.NOT_EQUAL) {
+            compileEquality(left, right, operator == TokenType.EQUIVALENT);
+            return Type.BOOLEAN;
+        }
+
+        if (operator == TokenType.ADD && (left == Type.STRING || right == Type.STRING)) {
+            if (left == Type.STRING && right == Type.STRING) {
+                writer.emitInvoke(ClassFileWriter.INVOKEVIRTUAL, "java/lang/String", "concat",
+                        "(Ljava/lang/String;)Ljava/lang/String;", -1);
+            }
+            else if (left == Type.STRING && right == Type.NUMBER) {
+                writer.emitInvoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "concat",
+                        "(Ljava/lang/String;D)Ljava/lang/String;", -2);
+            }
+            else if (left == Type.NUMBER && right == Type.STRING) {
+                writer.emitInvoke(ClassFileWriter.INVOKESTATIC, RUNTIME, "concat",
+                        "(DLjava/lang/String;)Ljava/lang/String;", -2);
+            }
+            else {
+                throw new Unsupported();
+            }
+            return Type.STRING;
+        }
+
+        // Everything else is only defined on numbers
+        if (left != Type.NUMBER || right != Type.NUMBER) {
+            throw new Unsupported();
+        }
+
+        switch (operator) {
+            case ADD -> writer.emit(ClassFileWriter.DADD, -2);
+            case SUBTRACT -> writer.emit(ClassFileWriter.DSUB, -2);
+            case MULTIPLY -> writer.emit(ClassFileWriter.DMUL, -2);
+            case DIVIDE -> writer.emit(ClassFileWriter.DDIV, -2);
+            // dcmpg makes NaN compare greater and dcmpl makes it compare less, so every comparison with NaN is false
+            case GREATER_THAN -> compileComparison(ClassFileWriter.DCMPL, ClassFileWriter.IFLE);
+            case GREATER_EQUAL -> compileComparison(ClassFileWriter.DCMPL, ClassFileWriter.IFLT);
+            case LESS_THAN -> compileComparison(ClassFileWriter.DCMPG, ClassFileWriter.IFGE);
+            case LESS_EQUAL -> compileComparison(ClassFileWriter.DCMPG, ClassFileWriter.IFGT);
+            default -> throw new Unsupported();
+        }
+
+        return operator == TokenType.ADD || operator == TokenType.SUBTRACT ||
+                operator == TokenType.MULTIPLY || operator == TokenType.DIVIDE ? Type.NUMBER : Type.BOOLEAN;
+    }
+
+    private void compileComparison(int compare, int jumpWhenFalse) {
+        writer.emit(compare, -3);
+        pushBoolean(jumpWhenFalse);
+    }
+
+    private void compileEquality(Type left, Type right, boolean equivalent) {
+        if (left != right) {
+            // Values of different types are never equal
+            pop(right);
+            pop(left);
+            writer.emit(equivalent ? ClassFileWriter.ICONST_0 : ClassFileWriter.ICONST_1, 1);
+            return;
+        }
+
+        switch (left) {
+            // Same rules as Double.equals, so NaN equals itself and 0.0 does not equal -0.0
+            case NUMBER -> writer.emitInvoke(ClassFileWriter.INVOKESTATIC, "java/lang/Double", "compare", "(DD)I", -3);
+            case STRING -> {
+                writer.emitInvoke(ClassFileWriter.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", -1);
+                // equals answers 1 for equal, flip it so that 0 means equal like the other two
+                writer.emit(ClassFileWriter.ICONST_1, 1);
+                writer.emit(ClassFileWriter.IXOR, -1);
+            }
+            case BOOLEAN -> writer.emit(ClassFileWriter.IXOR, -1);
+        }
+
+        // 0 now means equal
+        pushBoolean(equivalent ? ClassFileWriter.IFNE : ClassFileWriter.IFEQ);
+    }
+
+    // Turn the int on the stack into 0 or 1, the jump is taken when the result is false
+    private void pushBoolean(int jumpWhenFalse) {
+        ClassFileWriter.Label whenFalse = new ClassFileWriter.Label();
+        ClassFileWriter.Label end = new ClassFileWriter.Label();
+
+        writer.emitJump(jumpWhenFalse, whenFalse, -1);
+        int height = writer.stackHeight();
+        writer.emit(ClassFileWriter.ICONST_1, 1);
+        writer.emitJump(ClassFileWriter.GOTO, end, 0);
+        writer.placeLabel(whenFalse);
+        writer.setStackHeight(height);
+        writer.emit(ClassFileWriter.ICONST_0, 1);
+        writer.placeLabel(end);
+    }
+
+    // Scopes
+    private Variable lookup(String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Variable variable = scopes.get(i).get(name);
+            if (variable != null) {
+                return variable;
+            }
+        }
+
+        // Undeclared variables read as null, and assigning one is a runtime error
+        throw new Unsupported();
+    }
+
+    private void store(Variable variable) {
+        if (variable.field() != null) {
+            writer.emitField(ClassFileWriter.PUTSTATIC, variable.field(), descriptor(variable.type()), -variable.type().slots());
+            return;
+        }
+        switch (variable.type()) {
+            case NUMBER -> writer.emitLocal(ClassFileWriter.DSTORE, variable.local(), -2);
+            case STRING -> writer.emitLocal(ClassFileWriter.ASTORE, variable.local(), -1);
+            case BOOLEAN -> writer.emitLocal(ClassFileWriter.ISTORE, variable.local(), -1);
+        }
+    }
+
+    private void pop(Type type) {
+        writer.emit(type == Type.NUMBER ? ClassFileWriter.POP2 : ClassFileWriter.POP, -type.slots());
+    }
+
+    private static String descriptor(Type type) {
+        return switch (type) {
+            case NUMBER -> "D";
+            case STRING -> "Ljava/lang/String;";
+            case BOOLEAN -> "Z";
+        };
+    }
+
+    // Runtime support called from the generated class
+
+    static void print(double value) {
+        SpartieRuntime.output().println(value);
+    }
+
+    static void print(String value) {
+        SpartieRuntime.output().println(value);
+    }
+
+    static void print(boolean value) {
+        SpartieRuntime.output().println(Boolean.toString(value));
+    }
+
+    static String concat(String left, double right) {
+        return String.format("%s%.2f", left, right);
+    }
+
+    static String concat(double left, String right) {
+        return String.format("%.2f%s", left, right);
+    }
+}
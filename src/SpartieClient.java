@@ -0,0 +1,72 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+// Thin client of the SpartieServer. Sends its arguments, with the script's path made absolute, and copies the output
+// the server streams back to its own stdout and stderr. Loads next to nothing, so it starts about as fast as a JVM can.
+public class SpartieClient {
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: spartie-client socket [--engine=ast|vm|jvm] [--no-opt] file");
+            System.exit(ErrorCode.INCORRECT_USAGE);
+        }
+
+        String[] request = new String[args.length - 1];
+        for (int i = 1; i < args.length; i++) {
+            // The server does not run in our working directory
+            request[i - 1] = args[i].startsWith("--") ? args[i] : Path.of(args[i]).toAbsolutePath().toString();
+        }
+
+        int exitCode;
+        try {
+            exitCode = run(Path.of(args[0]), request, System.out, System.err);
+        } catch (IOException e) {
+            System.err.printf("Unable to reach server at %s\n", args[0]);
+            exitCode = ErrorCode.INCORRECT_USAGE;
+        }
+        System.out.flush();
+        System.exit(exitCode);
+    }
+
+    // Sends one request and copies the reply to out and err until the server sends the exit code, which it returns
+    static int run(Path socket, String[] request, OutputStream out, OutputStream err) throws IOException {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+
+            DataOutputStream requestStream = new DataOutputStream(Channels.newOutputStream(channel));
+            requestStream.writeInt(request.length);
+            for (String arg : request) {
+                requestStream.writeUTF(arg);
+            }
+            requestStream.flush();
+
+            DataInputStream reply = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte kind = reply.readByte();
+                if (kind == SpartieServer.EXIT) {
+                    return reply.readInt();
+                }
+
+                OutputStream target = kind == SpartieServer.STDERR ? err : out;
+                if (kind == SpartieServer.STDERR) {
+                    // Keep the order the server wrote the two streams in
+                    out.flush();
+                }
+                int length = reply.readInt();
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                reply.readFully(buffer, 0, length);
+                target.write(buffer, 0, length);
+            }
+        }
+    }
+}
@@ -0,0 +1,430 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Compiles the statements from the SpartieParser into a Chunk for the SpartieVM. Without functions every variable
+// can live in one flat array of locals, a block's variables reuse the slots of blocks that have already ended.
+public class SpartieCompiler {
+    // Thrown for a program with functions, which the flat array of locals cannot hold
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private int[] code = new int[256];
+    private int count = 0;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Double, Integer> numberIndexes = new HashMap<>();
+    private double[] numbers = new double[16];
+
+    // Innermost scope is last, each maps a variable name to its local slot
+    private final List<Map<String, Integer>> scopes = new ArrayList<>();
+    private int localCount = 0;
+    private int maxLocals = 0;
+
+    private int stackDepth = 0;
+    private int maxStack = 0;
+
+    // Returns the compiled program, or null if it uses something the compiler does not support
+    public Chunk compile(List<Statement> statements) {
+        scopes.add(new HashMap<>());
+        try {
+            for (Statement statement : statements) {
+                compile(statement);
+            }
+        } catch (Unsupported e) {
+            return null;
+        }
+        emit(OpCode.HALT);
+
+        return new Chunk(Arrays.copyOf(code, count), constants.toArray(), Arrays.copyOf(numbers, numberIndexes.size()),
+                maxLocals, maxStack);
+    }
+
+    private void compile(Statement statement) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> compilePrintStatement(printStatement);
+            case Statement.ExpressionStatement expressionStatement -> compileExpressionStatement(expressionStatement);
+            case Statement.VariableStatement variableStatement -> compileVariableStatement(variableStatement);
+            case Statement.BlockStatement blockStatement -> compileBlockStatement(blockStatement);
+            case Statement.IfStatement ifStatement -> compileIfStatement(ifStatement);
+            case Statement.WhileStatement whileStatement -> compileWhileStatement(whileStatement);
+            case Statement.ForStatement forStatement -> compileForStatement(forStatement);
+            case null -> {}
+            default -> throw new Unsupported();
+        };
+    }
+
+    private void compile(Expression expression) {
+        switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> compileLogical(logicalExpression);
+            case Expression.AssignmentExpression assignmentExpression -> compileAssign(assignmentExpression);
+            case Expression.VariableExpression variableExpression -> compileVariable(variableExpression);
+            case Expression.LiteralExpression literalExpression -> compileLiteral(literalExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> compile(parenthesesExpression.expression);
+            // Compiled code evaluates a hoisted expression in place
+            case Expression.HoistedExpression hoistedExpression -> compile(hoistedExpression.expression);
+            case Expression.UnaryExpression unaryExpression -> compileUnary(unaryExpression);
+            case Expression.BinaryExpression binaryExpression -> compileBinary(binaryExpression);
+            case null -> emit(OpCode.NULL);
+            default -> throw new Unsupported();
+        };
+    }
+
+    // Statement Implementation
+    private void compileWhileStatement(Statement.WhileStatement statement) {
+        int start = count;
+        int exit = compileCondition(statement.condition);
+
+        compile(statement.body);
+        emit(OpCode.JUMP, start);
+
+        patchJump(exit);
+    }
+
+    private void compileForStatement(Statement.ForStatement statement) {
+        // The initializer's variable belongs to the loop
+        beginScope();
+        compile(statement.initializer);
+
+        int start = count;
+        int exit = compileCondition(statement.condition);
+
+        compile(statement.body);
+        if (statement.increment != null) {
+            compile(new Statement.ExpressionStatement(statement.line, statement.increment));
+        }
+        emit(OpCode.JUMP, start);
+
+        patchJump(exit);
+        endScope();
+    }
+
+    private void compileIfStatement(Statement.IfStatement statement) {
+        int elseJump = compileCondition(statement.condition);
+
+        compile(statement.thenBranch);
+        int endJump = emitJump(OpCode.JUMP);
+
+        patchJump(elseJump);
+        compile(statement.elseBranch);
+        patchJump(endJump);
+    }
+
+    private void compileBlockStatement(Statement.BlockStatement statement) {
+        beginScope();
+        for (Statement inner : statement.statements) {
+            compile(inner);
+        }
+        endScope();
+    }
+
+    private void compileVariableStatement(Statement.VariableStatement statement) {
+        if (statement.initializer != null) {
+            compile(statement.initializer);
+        }
+        else {
+            emit(OpCode.NULL);
+        }
+
+        // Declared after the initializer so that 'var a = a;' refers to an outer 'a'
+        emit(OpCode.STORE_LOCAL, declare(statement.name.text));
+    }
+
+    private void compileExpressionStatement(Statement.ExpressionStatement statement) {
+        // An assignment whose value is thrown away can store straight into the local
+        if (statement.expression instanceof Expression.AssignmentExpression assignmentExpression) {
+            int slot = lookup(assignmentExpression.name.text);
+            if (slot >= 0) {
+                if (compileAddToLocal(slot, assignmentExpression)) {
+                    return;
+                }
+
+                compile(assignmentExpression.value);
+                emit(OpCode.STORE_LOCAL, slot);
+                return;
+            }
+        }
+
+        compile(statement.expression);
+        emit(OpCode.POP);
+    }
+
+    // Compile 'x = x + <expression>' to update the local in place
+    private boolean compileAddToLocal(int slot, Expression.AssignmentExpression assignment) {
+        if (!(assignment.value instanceof Expression.BinaryExpression binaryExpression)
+                || binaryExpression.operator.type != TokenType.ADD
+                || !(binaryExpression.left instanceof Expression.VariableExpression variableExpression)
+                || lookup(variableExpression.name.text) != slot) {
+            return false;
+        }
+
+        if (binaryExpression.right instanceof Expression.LiteralExpression literalExpression
+                && literalExpression.literalValue instanceof Double value) {
+            emit(OpCode.INCREMENT_LOCAL, slot);
+            write(number(value));
+            write(constant(binaryExpression.operator));
+            return true;
+        }
+
+        // The local is read after the right operand here, so the right operand must not be able to change it
+        if (assigns(binaryExpression.right)) {
+            return false;
+        }
+
+        compile(binaryExpression.right);
+        emit(OpCode.ADD_TO_LOCAL, slot);
+        write(constant(binaryExpression.operator));
+        return true;
+    }
+
+    private void compilePrintStatement(Statement.PrintStatement statement) {
+        compile(statement.expression);
+        emit(OpCode.PRINT);
+    }
+
+    // Compile a condition that jumps when it is false, returning the jump to patch. A comparison jumps on its own
+    // result instead of pushing a boolean for JUMP_IF_FALSE to test.
+    private int compileCondition(Expression condition) {
+        while (condition instanceof Expression.ParenthesesExpression parenthesesExpression) {
+            condition = parenthesesExpression.expression;
+        }
+
+        if (condition instanceof Expression.BinaryExpression binaryExpression) {
+            int op = switch (binaryExpression.operator.type) {
+                case GREATER_THAN -> OpCode.JUMP_IF_NOT_GREATER;
+                case GREATER_EQUAL -> OpCode.JUMP_IF_NOT_GREATER_EQUAL;
+                case LESS_THAN -> OpCode.JUMP_IF_NOT_LESS;
+                case LESS_EQUAL -> OpCode.JUMP_IF_NOT_LESS_EQUAL;
+                default -> -1;
+            };
+
+            // Loop conditions of the form 'x < n' read the local and the number directly
+            if ((op == OpCode.JUMP_IF_NOT_LESS || op == OpCode.JUMP_IF_NOT_LESS_EQUAL)
+                    && binaryExpression.left instanceof Expression.VariableExpression variableExpression
+                    && lookup(variableExpression.name.text) >= 0
+                    && binaryExpression.right instanceof Expression.LiteralExpression literalExpression
+                    && literalExpression.literalValue instanceof Double value) {
+                emit(op == OpCode.JUMP_IF_NOT_LESS ? OpCode.JUMP_IF_NOT_LESS_LOCAL : OpCode.JUMP_IF_NOT_LESS_EQUAL_LOCAL,
+                        lookup(variableExpression.name.text));
+                write(number(value));
+                write(constant(binaryExpression.operator));
+                write(-1);
+                return count - 1;
+            }
+
+            if (op >= 0) {
+                compile(binaryExpression.left);
+                compile(binaryExpression.right);
+                emit(op, constant(binaryExpression.operator));
+                write(-1);
+                return count - 1;
+            }
+        }
+
+        compile(condition);
+        return emitJump(OpCode.JUMP_IF_FALSE);
+    }
+
+    // Expression Implementation
+    private void compileLogical(Expression.LogicalExpression expression) {
+        compile(expression.left);
+
+        // Short-circuit, leaving the left value as the result
+        int end = emitJump(expression.operator.type == TokenType.OR ? OpCode.JUMP_IF_TRUE_KEEP : OpCode.JUMP_IF_FALSE_KEEP);
+        emit(OpCode.POP);
+        compile(expression.right);
+
+        patchJump(end);
+    }
+
+    private void compileAssign(Expression.AssignmentExpression expression) {
+        compile(expression.value);
+
+        int slot = lookup(expression.name.text);
+        if (slot >= 0) {
+            emit(OpCode.SET_LOCAL, slot);
+        }
+        else {
+            emit(OpCode.UNDEFINED_VARIABLE, constant(expression.name));
+        }
+    }
+
+    private void compileVariable(Expression.VariableExpression expression) {
+        int slot = lookup(expression.name.text);
+
+        // Variables that were never declared evaluate to null
+        if (slot >= 0) {
+            emit(OpCode.GET_LOCAL, slot);
+        }
+        else {
+            emit(OpCode.NULL);
+        }
+    }
+
+    private void compileLiteral(Expression.LiteralExpression expression) {
+        switch (expression.literalValue) {
+            case null -> emit(OpCode.NULL);
+            case Boolean value -> emit(value ? OpCode.TRUE : OpCode.FALSE);
+            case Double value -> emit(OpCode.NUMBER, number(value));
+            default -> emit(OpCode.CONSTANT, constant(expression.literalValue));
+        }
+    }
+
+    private void compileUnary(Expression.UnaryExpression expression) {
+        compile(expression.right);
+
+        if (expression.operator.type == TokenType.NOT) {
+            emit(OpCode.NOT);
+        }
+        else {
+            emit(OpCode.NEGATE, constant(expression.operator));
+        }
+    }
+
+    private void compileBinary(Expression.BinaryExpression expression) {
+        compile(expression.left);
+
+        // Arithmetic with a number literal on the right takes the number as an operand
+        if (expression.right instanceof Expression.LiteralExpression literalExpression
+                && literalExpression.literalValue instanceof Double value) {
+            int op = switch (expression.operator.type) {
+                case ADD -> OpCode.ADD_NUMBER;
+                case SUBTRACT -> OpCode.SUBTRACT_NUMBER;
+                case MULTIPLY -> OpCode.MULTIPLY_NUMBER;
+                case DIVIDE -> OpCode.DIVIDE_NUMBER;
+                default -> -1;
+            };
+
+            if (op >= 0) {
+                emit(op, number(value));
+                write(constant(expression.operator));
+                return;
+            }
+        }
+
+        compile(expression.right);
+
+        int op = switch (expression.operator.type) {
+            case ADD -> OpCode.ADD;
+            case SUBTRACT -> OpCode.SUBTRACT;
+            case MULTIPLY -> OpCode.MULTIPLY;
+            case DIVIDE -> OpCode.DIVIDE;
+            case EQUIVALENT -> OpCode.EQUIVALENT;
+            case NOT_EQUAL -> OpCode.NOT_EQUAL;
+            case GREATER_THAN -> OpCode.GREATER_THAN;
+            case GREATER_EQUAL -> OpCode.GREATER_EQUAL;
+            case LESS_THAN -> OpCode.LESS_THAN;
+            default -> OpCode.LESS_EQUAL;
+        };
+        emit(op, constant(expression.operator));
+    }
+
+    // Scopes
+    private void beginScope() {
+        scopes.add(new HashMap<>());
+    }
+
+    private void endScope() {
+        // The slots of the scope's variables are free for the next block
+        localCount -= scopes.removeLast().size();
+    }
+
+    private int declare(String name) {
+        // Declaring the same name twice in one scope replaces the old variable, so it can share its slot
+        Map<String, Integer> scope = scopes.getLast();
+        Integer slot = scope.get(name);
+        if (slot == null) {
+            slot = localCount++;
+            maxLocals = Math.max(maxLocals, localCount);
+            scope.put(name, slot);
+        }
+        return slot;
+    }
+
+    private int lookup(String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Integer slot = scopes.get(i).get(name);
+            if (slot != null) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Whether evaluating an expression can assign a variable
+    private static boolean assigns(Expression expression) {
+        return switch (expression) {
+            case Expression.AssignmentExpression assignmentExpression -> true;
+            case Expression.LogicalExpression logicalExpression -> assigns(logicalExpression.left) || assigns(logicalExpression.right);
+            case Expression.BinaryExpression binaryExpression -> assigns(binaryExpression.left) || assigns(binaryExpression.right);
+            case Expression.UnaryExpression unaryExpression -> assigns(unaryExpression.right);
+            case Expression.ParenthesesExpression parenthesesExpression -> assigns(parenthesesExpression.expression);
+            case null, default -> false;
+        };
+    }
+
+    // Emitting code
+    private void emit(int op) {
+        write(op);
+        stackDepth += stackEffect(op);
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void emit(int op, int operand) {
+        emit(op);
+        write(operand);
+    }
+
+    // Emit a jump whose target is filled in later by patchJump
+    private int emitJump(int op) {
+        emit(op, -1);
+        return count - 1;
+    }
+
+    private void patchJump(int operand) {
+        code[operand] = count;
+    }
+
+    private void write(int value) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[count++] = value;
+    }
+
+    private int constant(Object value) {
+        constants.add(value);
+        return constants.size() - 1;
+    }
+
+    private int number(double value) {
+        Integer index = numberIndexes.get(value);
+        if (index == null) {
+            index = numberIndexes.size();
+            if (index == numbers.length) {
+                numbers = Arrays.copyOf(numbers, numbers.length * 2);
+            }
+            numbers[index] = value;
+            numberIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    // Change in stack height caused by an instruction, used to size the VM's stack
+    private static int stackEffect(int op) {
+        return switch (op) {
+            case OpCode.NUMBER, OpCode.CONSTANT, OpCode.NULL, OpCode.TRUE, OpCode.FALSE, OpCode.GET_LOCAL -> 1;
+            case OpCode.POP, OpCode.STORE_LOCAL, OpCode.PRINT, OpCode.JUMP_IF_FALSE,
+                 OpCode.ADD, OpCode.SUBTRACT, OpCode.MULTIPLY, OpCode.DIVIDE,
+                 OpCode.EQUIVALENT, OpCode.NOT_EQUAL, OpCode.GREATER_THAN, OpCode.GREATER_EQUAL,
+                 OpCode.LESS_THAN, OpCode.LESS_EQUAL -> -1;
+            case OpCode.JUMP_IF_NOT_GREATER, OpCode.JUMP_IF_NOT_GREATER_EQUAL,
+                 OpCode.JUMP_IF_NOT_LESS, OpCode.JUMP_IF_NOT_LESS_EQUAL -> -2;
+            case OpCode.ADD_TO_LOCAL -> -1;
+            default -> 0;
+        };
+    }
+}
@@ -0,0 +1,13 @@
+// An error in a running program. Carries the message and the exit code the program ends with, so whoever runs the
+// program decides what an error means: Main reports it and exits, the batch interpreter fails just the one row.
+public class SpartieError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public final int exitCode;
+
+    public SpartieError(String message, int exitCode) {
+        // No stack trace, it is never shown and a batch can raise one per row
+        super(message, null, false, false);
+        this.exitCode = exitCode;
+    }
+}
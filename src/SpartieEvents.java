@@ -0,0 +1,107 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+// JDK Flight Recorder events for the phases of running a script, so a recording shows the time of each phase next to
+// the GC and CPU events of the same moment. An event that is not being recorded costs a check of a flag. They are in
+// the Spartie category, enabled by default, with stack traces off as the phase already says where the time went.
+public class SpartieEvents {
+    private SpartieEvents() {
+    }
+
+    @Name("spartie.Scan")
+    @Label("Scan")
+    @Category("Spartie")
+    @StackTrace(false)
+    static final class Scan extends Event {
+        @Label("Characters")
+        int characters;
+
+        @Label("Tokens")
+        int tokens;
+    }
+
+    @Name("spartie.Parse")
+    @Label("Parse")
+    @Category("Spartie")
+    @StackTrace(false)
+    static final class Parse extends Event {
+        @Label("Top Level Statements")
+        int statements;
+    }
+
+    @Name("spartie.Optimize")
+    @Label("Optimize")
+    @Category("Spartie")
+    @StackTrace(false)
+    static final class Optimize extends Event {
+    }
+
+    @Name("spartie.Resolve")
+    @Label("Resolve")
+    @Category("Spartie")
+    @StackTrace(false)
+    static final class Resolve extends Event {
+    }
+
+    // Compiling for the vm and jvm engines is part of this phase
+    @Name("spartie.Interpret")
+    @Label("Interpret")
+    @Category("Spartie")
+    @StackTrace(false)
+    static final class Interpret extends Event {
+        @Label("Engine")
+        String engine;
+    }
+
+    // A top level statement of the tree interpreter that ran for longer than the threshold
+    @Name("spartie.SlowStatement")
+    @Label("Slow Statement")
+    @Category("Spartie")
+    @StackTrace(false)
+    @Threshold("20 ms")
+    static final class SlowStatement extends Event {
+        @Label("Line")
+        int line;
+
+        @Label("Kind")
+        String kind;
+    }
+
+    // The SpartieMetrics counters, totals since the JVM started
+    @Name("spartie.Metrics")
+    @Label("Metrics")
+    @Category("Spartie")
+    @StackTrace(false)
+    @Period("1 s")
+    static final class Metrics extends Event {
+        @Label("Statements")
+        long statements;
+
+        @Label("Variable Lookups")
+        long lookups;
+
+        @Label("Local Lookups")
+        @Description("Lookups of a variable declared in the scope it was used in")
+        long localLookups;
+
+        @Label("Boxed Numbers")
+        long boxed;
+
+        @Label("Environments Created")
+        long environments;
+
+        @Label("Scopes Entered")
+        long scopes;
+
+        @Label("Print Output")
+        @DataAmount
+        long printBytes;
+    }
+}
@@ -1,16 +1,141 @@
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+// Runs a resolved tree. Everything a run changes, the environments, the call depth and the value being returned, lives
+// in the interpreter and the tree is only read, but for the cache in BinaryExpression.node. So an interpreter is the
+// state of one run: it is cheap to create, used by one thread at a time, and any number of them can run the same tree
+// at once.
 public class SpartieInterpreter {
-    private Environment globalEnvironment = new Environment();
+    // Held by the slot of a hoisted expression until the loop first evaluates it
+    private static final Object UNSET = new Object();
+
+    // Never committed, only asked whether a recording wants slow statements, so no event is made for a statement
+    // while none does. EventType.isEnabled would say the same but starts up Flight Recorder to find out.
+    private static final SpartieEvents.SlowStatement SLOW_STATEMENTS = new SpartieEvents.SlowStatement();
+
+    private Environment globalEnvironment;
+    private final OutputSink output = SpartieRuntime.output();
+
+    // Environments for blocks and loops, one per nesting level. Blocks are entered and left in strict order and
+    // nothing holds on to an environment after its block ends, so the next block at the same level can reuse it.
+    private Environment[] frames = new Environment[16];
+    private int frameCount = 0;
+
+    // Told of every statement as it starts and ends when the script is being profiled
+    private final SpartieProfiler profiler;
+
+    // Calls deeper than this fail with an error of the script. The JVM's stack would run out long before that on a
+    // thread of the default size, so scripts run on threads() instead.
+    static final int DEFAULT_MAX_CALL_DEPTH = 1000;
+
+    // Stack one call of a script takes at most, measured with -Xint for a call nested in a loop, an if and a few
+    // operators of its function. A call nested much deeper than that can still run out of stack before the limit.
+    private static final long STACK_PER_CALL = 16 * 1024;
+
+    // Stack used below the first call, by Main and by the interpreter itself
+    private static final long STACK_BASE = 1024 * 1024;
+
+    // The limit can be raised no further than this, which takes a stack of about a gigabyte. Much more than that and
+    // the thread cannot be started at all.
+    static final int MAX_CALL_DEPTH = (int) ((1L << 30) / STACK_PER_CALL);
+
+    private static int defaultMaxCallDepth = DEFAULT_MAX_CALL_DEPTH;
+    private final int maxCallDepth = defaultMaxCallDepth;
+
+    // The environment of the top level, which every function's scope encloses
+    private Environment globals;
+    private int callDepth = 0;
+
+    // Set by a return statement. Every loop and list of statements stops when it sees the flag, and the call clears it
+    // once the body has unwound back to it, so returning takes no exception.
+    private boolean returning = false;
+    private Object returnValue = null;
+
+    // Result of the last evaluate, see there
+    private double number;
+    private Object value;
+
+    public SpartieInterpreter() {
+        this(null, new Environment());
+    }
+
+    public SpartieInterpreter(SpartieProfiler profiler) {
+        this(profiler, new Environment());
+    }
+
+    // Runs with the given globals, such as a SharedGlobals that other interpreters run with at the same time
+    public SpartieInterpreter(SpartieProfiler profiler, Environment globals) {
+        this.profiler = profiler;
+        this.globalEnvironment = globals;
+        this.globals = globals;
+    }
+
+    // For interpreters created from now on, up to MAX_CALL_DEPTH
+    static void setMaxCallDepth(int depth) {
+        defaultMaxCallDepth = depth;
+    }
+
+    // Threads with stack for the deepest call interpreters created from now on allow
+    static Thread.Builder.OfPlatform threads() {
+        return Thread.ofPlatform().stackSize(STACK_BASE + STACK_PER_CALL * defaultMaxCallDepth);
+    }
+
+    // Sets the starting value of a global variable, in a slot from SpartieResolver.declareGlobal
+    public void defineGlobal(int slot, Object value) {
+        globalEnvironment.define(slot, value);
+    }
+
+    // Value of a global variable after the program ran, null if it was never given one
+    public Object global(int slot) {
+        return slot < globalEnvironment.size() ? globalEnvironment.get(0, slot) : null;
+    }
 
     public void run(List<Statement> statements) {
-        for(Statement statement : statements) {
-            interpret(statement);
+        // An error unwinds blocks without leaving them, a session that goes on after it starts again from the globals
+        Environment global = globalEnvironment;
+        globals = global;
+        try {
+            for(Statement statement : statements) {
+                if (!SLOW_STATEMENTS.isEnabled()) {
+                    interpret(statement);
+                    continue;
+                }
+
+                SpartieEvents.SlowStatement event = new SpartieEvents.SlowStatement();
+                event.begin();
+                interpret(statement);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.line = statement.line;
+                    event.kind = SpartieProfiler.kind(statement);
+                    event.commit();
+                }
+            }
+        } finally {
+            globalEnvironment = global;
+            frameCount = 0;
+            callDepth = 0;
+            returning = false;
+            returnValue = null;
+            if (profiler != null) {
+                profiler.unwind();
+            }
         }
     }
 
     private void interpret(Statement statement) {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.statement();
+        // A block is only where its statements are, it is not a line of its own
+        if (profiler != null && statement != null && !(statement instanceof Statement.BlockStatement)) {
+            profiler.enter(statement);
+            dispatch(statement);
+            profiler.exit();
+            return;
+        }
+        dispatch(statement);
+    }
+
+    private void dispatch(Statement statement) {
         switch(statement) {
             case Statement.PrintStatement printStatement ->  interpretPrintStatement(printStatement);
             case Statement.ExpressionStatement expressionStatement -> interpretExpressionStatement(expressionStatement);
@@ -18,6 +143,9 @@ public class SpartieInterpreter {
             case Statement.BlockStatement blockStatement -> interpretBlockStatement(blockStatement);
             case Statement.IfStatement ifStatement -> interpretIfStatement(ifStatement);
             case Statement.WhileStatement whileStatement -> interpretWhileStatement(whileStatement);
+            case Statement.ForStatement forStatement -> interpretForStatement(forStatement);
+            case Statement.ReturnStatement returnStatement -> interpretReturnStatement(returnStatement);
+            // Declaring a function does nothing at run time, the resolver has already tied every call to it
             case null, default -> {}
         };
     }
@@ -29,8 +157,10 @@ public class SpartieInterpreter {
             case Expression.VariableExpression variableExpression -> interpretVariable(variableExpression);
             case Expression.LiteralExpression literalExpression -> interpretLiteral(literalExpression);
             case Expression.ParenthesesExpression parenthesesExpression -> interpretParenthesis(parenthesesExpression);
+            case Expression.HoistedExpression hoistedExpression -> interpretHoisted(hoistedExpression);
             case Expression.UnaryExpression unaryExpression -> interpretUnary(unaryExpression);
             case Expression.BinaryExpression binaryExpression -> interpretBinary(binaryExpression);
+            case Expression.CallExpression callExpression -> interpretCall(callExpression);
             case null, default -> null;
         };
     }
@@ -39,47 +169,153 @@ public class SpartieInterpreter {
     private void interpretWhileStatement(Statement.WhileStatement statement) {
         // Completed to do: Evaluate the while statement based on the condition
 
-        while (isTrue(interpret(statement.condition))){
+        while (interpretCondition(statement.condition)){
             interpret(statement.body);
+            if (returning) {
+                return;
+            }
         }
     }
 
+    private void interpretForStatement(Statement.ForStatement statement) {
+        Environment previous = globalEnvironment;
+        if (statement.slotCount > 0) {
+            globalEnvironment = pushFrame(statement.slotCount);
+            for (int slot = 0; slot < statement.hoistedCount; slot++) {
+                globalEnvironment.define(slot, UNSET);
+            }
+        }
+
+        if (statement.initializer != null) {
+            interpret(statement.initializer);
+        }
+        if (statement.countedLoop == null || !interpretCountedLoop(statement)) {
+            while (interpretCondition(statement.condition)) {
+                interpret(statement.body);
+                if (returning) {
+                    break;
+                }
+                if (statement.increment != null) {
+                    interpretDiscarded(statement.increment);
+                }
+            }
+        }
+
+        if (statement.slotCount > 0) {
+            frameCount--;
+        }
+        globalEnvironment = previous;
+    }
+
+    // Runs a counted loop with the counter in a primitive, the condition and increment are never walked. Returns
+    // false without running anything when the counter or the bound turn out not to be numbers.
+    private boolean interpretCountedLoop(Statement.ForStatement statement) {
+        Statement.CountedLoop loop = statement.countedLoop;
+        int slot = loop.counter.slot;
+        if (!globalEnvironment.isDouble(0, slot)) {
+            return false;
+        }
+
+        // The bound cannot change while the loop runs. It is a literal, a variable or a hoisted value, so evaluating
+        // it here does no harm when the loop then has to run without counting.
+        if (!evaluate(loop.bound)) {
+            return false;
+        }
+        double bound = number;
+        double step = loop.step;
+        double counter = globalEnvironment.getDouble(0, slot);
+
+        while (switch (loop.comparison) {
+            case LESS_THAN -> counter < bound;
+            case LESS_EQUAL -> counter <= bound;
+            case GREATER_THAN -> counter > bound;
+            default -> counter >= bound;
+        }) {
+            interpret(statement.body);
+            if (returning) {
+                break;
+            }
+
+            // The body reads the counter from its slot but never writes it
+            counter += step;
+            globalEnvironment.assignDouble(0, slot, counter);
+        }
+        return true;
+    }
+
     private void interpretIfStatement(Statement.IfStatement statement) {
         // Completed to do: evaluate the condition and then execute the appropriate branch
 
-        ArrayList<Statement> block = new ArrayList<>();
-        if(isTrue(interpret(statement.condition))){
-            block.add(statement.thenBranch);
+        // A branch cannot declare a variable, so it runs in the current environment
+        if(interpretCondition(statement.condition)){
+            interpret(statement.thenBranch);
         }else {
-            block.add(statement.elseBranch);
+            interpret(statement.elseBranch);
         }
-
-        interpretBlockStatement(new Statement.BlockStatement(block));
     }
 
     private void interpretBlockStatement(Statement.BlockStatement statement) {
-        interpretBlock(statement.statements, new Environment(globalEnvironment));
+        // A block without declarations needs no environment of its own
+        if (statement.slotCount == 0) {
+            interpretStatements(statement.statements);
+            return;
+        }
+        interpretBlock(statement.statements, pushFrame(statement.slotCount));
+        frameCount--;
+    }
+
+    // The slots may still hold values from the last block that used the environment. The resolver only lets a block
+    // read a slot after its declaration has run, so those values are never seen.
+    private Environment pushFrame(int size) {
+        if (SpartieMetrics.ENABLED) SpartieMetrics.scope();
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frames.length * 2);
+        }
+
+        Environment frame = frames[frameCount];
+        if (frame == null || frame.size() < size) {
+            frame = new Environment(globalEnvironment, size);
+            frames[frameCount] = frame;
+        }
+        frame.enclosing = globalEnvironment;
+        frameCount++;
+        return frame;
     }
 
     private void interpretVariableStatement(Statement.VariableStatement statement) {
-        Object value = null;
-        if (statement.initializer != null) {
-            // Evaluate the variable assignment expression
-            value = interpret(statement.initializer);
+        if (statement.initializer == null) {
+            globalEnvironment.define(statement.slot, null);
+        }
+        // Numbers are stored without boxing
+        else if (evaluate(statement.initializer)) {
+            globalEnvironment.defineDouble(statement.slot, number);
+        }
+        else {
+            globalEnvironment.define(statement.slot, value);
         }
-        globalEnvironment.define(statement.name.text, value);
     }
 
     private void interpretExpressionStatement(Statement.ExpressionStatement statement) {
-        // We can re-use our previous interpret
-        interpret(statement.expression);
+        interpretDiscarded(statement.expression);
+    }
+
+    private void interpretDiscarded(Expression expression) {
+        // The value is thrown away, so a number never has to be boxed
+        evaluate(expression);
     }
 
     private void interpretPrintStatement(Statement.PrintStatement statement) {
-        // First evaluate the expression
-        Object value = interpret(statement.expression);
+        if (evaluate(statement.expression)) {
+            output.println(number);
+            return;
+        }
+
+        output.println(value.toString());
+    }
 
-        System.out.println(value.toString());
+    private void interpretReturnStatement(Statement.ReturnStatement statement) {
+        returnValue = statement.value == null ? null : interpret(statement.value);
+        returning = true;
     }
 
     private void interpretBlock(List<Statement> statements, Environment environment) {
@@ -87,25 +323,71 @@ public class SpartieInterpreter {
         Environment previous = globalEnvironment;
 
         globalEnvironment = environment;
-        for (Statement statement : statements) {
-            interpret(statement);
-        }
+        interpretStatements(statements);
 
         // Restore environment
         globalEnvironment = previous;
     }
 
+    private void interpretStatements(List<Statement> statements) {
+        // Indexed rather than with an iterator, so running a block allocates nothing
+        for (int i = 0; i < statements.size(); i++) {
+            interpret(statements.get(i));
+            if (returning) {
+                return;
+            }
+        }
+    }
+
+    // The callee's scope is the next frame on the frame stack, so a call allocates nothing once the stack has been that
+    // deep before. The arguments are evaluated in the caller's environment straight into the slots of the parameters.
+    private Object interpretCall(Expression.CallExpression expression) {
+        Statement.FunctionStatement function = expression.function;
+        if (function == null) {
+            throw new SpartieError(expression.error, ErrorCode.INTERPRET_ERROR);
+        }
+        if (callDepth == maxCallDepth) {
+            throw new SpartieError(String.format("Stack overflow calling %s on line %d, more than %d calls deep",
+                    expression.name.text, expression.name.line, maxCallDepth), ErrorCode.INTERPRET_ERROR);
+        }
+
+        Environment frame = pushFrame(function.slotCount);
+        frame.enclosing = globals;
+        List<Expression> arguments = expression.arguments;
+        for (int i = 0; i < arguments.size(); i++) {
+            if (evaluate(arguments.get(i))) {
+                frame.defineDouble(i, number);
+            }
+            else {
+                frame.define(i, value);
+            }
+        }
+
+        Environment previous = globalEnvironment;
+        globalEnvironment = frame;
+        callDepth++;
+        interpretStatements(function.body);
+        callDepth--;
+        globalEnvironment = previous;
+        frameCount--;
+
+        Object result = returnValue;
+        returning = false;
+        returnValue = null;
+        return result;
+    }
+
     private Object interpretLogical(Expression.LogicalExpression logicalExpression) {
         Object left = interpret(logicalExpression.left);
 
         if (logicalExpression.operator.type == TokenType.OR) {
             // Short-circuit
-            if (isTrue(left)) {
+            if (SpartieRuntime.isTrue(left)) {
                 return left;
             }
         }
         else {
-            if (!isTrue(left)) {
+            if (!SpartieRuntime.isTrue(left)) {
                 return left;
             }
         }
@@ -115,16 +397,15 @@ public class SpartieInterpreter {
     }
 
     private Object interpretAssign(Expression.AssignmentExpression expression) {
-        Token name = expression.name;
-        Expression val = expression.value;
-        Object evaluatedValue = interpret(val); // Evaluate the expression to get its value
-        globalEnvironment.assign(name, evaluatedValue); // Assign the evaluated value
-        return evaluatedValue;
+        return boxed(evaluateAssign(expression));
     }
 
     private Object interpretVariable(Expression.VariableExpression expression) {
         // Completed to do: Return the value from our global environment
-        return globalEnvironment.get(expression.name.text);
+
+        // Variables that were never declared evaluate to null
+        if (expression.depth < 0) return null;
+        return globalEnvironment.get(expression.depth, expression.slot);
     }
 
     private Object interpretLiteral(Expression.LiteralExpression expression) {
@@ -136,106 +417,179 @@ public class SpartieInterpreter {
         return this.interpret(expression.expression);
     }
 
+    private Object interpretHoisted(Expression.HoistedExpression expression) {
+        return boxed(evaluateHoisted(expression));
+    }
+
     private Object interpretUnary(Expression.UnaryExpression expression) {
-        Object right = interpret(expression.right);
+        return boxed(evaluateUnary(expression));
+    }
+
+    private Object interpretBinary(Expression.BinaryExpression expression) {
+        return boxed(evaluateBinary(expression));
+    }
 
-        switch (expression.operator.type) {
-            case NOT:
-                return !isTrue(right);
-            case SUBTRACT:
-                validateOperand(expression.operator, right);
-                return -(double)right;
+    // Typed evaluation
+
+    // Evaluate an expression in a context that needs a true or false answer, without boxing
+    private boolean interpretCondition(Expression expression) {
+        if (expression instanceof Expression.LogicalExpression logicalExpression) {
+            if (logicalExpression.operator.type == TokenType.OR) {
+                return interpretCondition(logicalExpression.left) || interpretCondition(logicalExpression.right);
+            }
+            return interpretCondition(logicalExpression.left) && interpretCondition(logicalExpression.right);
+        }
+        if (expression instanceof Expression.ParenthesesExpression parenthesesExpression) {
+            return interpretCondition(parenthesesExpression.expression);
+        }
+        if (expression instanceof Expression.UnaryExpression unaryExpression
+                && unaryExpression.operator.type == TokenType.NOT) {
+            return !interpretCondition(unaryExpression.right);
         }
 
-        return null;
+        // Every number is true. A comparison leaves a Boolean, which is never allocated.
+        return evaluate(expression) || SpartieRuntime.isTrue(value);
     }
 
-    private Object interpretBinary(Expression.BinaryExpression expression) {
-        Object left = interpret(expression.left);
-        Object right = interpret(expression.right);
-
-        // Handle unique case with add operator that can be applied to Strings and Doubles
-        if (expression.operator.type == TokenType.ADD) {
-            if (left instanceof Double && right instanceof Double) {
-                return (double) left + (double) right;
-            } else if (left instanceof String && right instanceof String) {
-                return (String) left + (String) right;
-            }
-            else if ((left instanceof String || right instanceof String) && (left instanceof Double || right instanceof Double)) {
-                if (left instanceof Double) {
-                    return String.format("%.2f%s", (Double)left, (String)right);
-                }
-                else {
-                    return String.format("%s%.2f", (String)left, (Double)right);
-                }
+    // Evaluate an expression in one walk and return whether it produced a number. A number is left unboxed in number
+    // and any other value in value, so arithmetic on numbers is done without boxing. A nested evaluation, including
+    // one in a call, overwrites both, so the result of one operand is taken out of them before the next is evaluated.
+    private boolean evaluate(Expression expression) {
+        return switch (expression) {
+            case Expression.BinaryExpression binaryExpression -> evaluateBinary(binaryExpression);
+            case Expression.VariableExpression variableExpression -> evaluateVariable(variableExpression);
+            case Expression.LiteralExpression literalExpression -> evaluateLiteral(literalExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> evaluate(parenthesesExpression.expression);
+            case Expression.UnaryExpression unaryExpression -> evaluateUnary(unaryExpression);
+            case Expression.AssignmentExpression assignmentExpression -> evaluateAssign(assignmentExpression);
+            case Expression.HoistedExpression hoistedExpression -> evaluateHoisted(hoistedExpression);
+            case null, default -> {
+                value = interpret(expression);
+                yield false;
             }
-        }
+        };
+    }
+
+    // The result the last evaluate left, boxed if it is a number
+    private Object boxed(boolean isNumber) {
+        return isNumber ? (Object) number : value;
+    }
 
-        switch(expression.operator.type) {
-            case EQUIVALENT:
-                return isEquivalent(left, right);
-            case NOT_EQUAL:
-                return !isEquivalent(left, right);
+    private boolean evaluateBinary(Expression.BinaryExpression expression) {
+        boolean leftIsNumber = evaluate(expression.left);
+        double left = number;
+        Object leftValue = value;
+        boolean rightIsNumber = evaluate(expression.right);
+
+        TokenType type = expression.operator.type;
+        if (leftIsNumber && rightIsNumber) {
+            double right = number;
+            if (isArithmetic(type)) {
+                number = switch (type) {
+                    case ADD -> left + right;
+                    case SUBTRACT -> left - right;
+                    case MULTIPLY -> left * right;
+                    default -> left / right;
+                };
+                return true;
+            }
+            if (isComparison(type)) {
+                value = switch (type) {
+                    // Same rules as Double.equals, so NaN equals itself and 0.0 does not equal -0.0
+                    case EQUIVALENT -> Double.compare(left, right) == 0;
+                    case NOT_EQUAL -> Double.compare(left, right) != 0;
+                    case GREATER_THAN -> left > right;
+                    case GREATER_EQUAL -> left >= right;
+                    case LESS_THAN -> left < right;
+                    default -> left <= right;
+                };
+                return false;
+            }
         }
 
-        // If we ge this far, then validate operands
-        validateOperands(expression.operator, left, right);
+        // The node specializes itself to the operand types this site sees
+        value = expression.node.execute(leftIsNumber ? (Object) left : leftValue, boxed(rightIsNumber));
+        return false;
+    }
 
-        switch(expression.operator.type) {
-            case SUBTRACT:
-                return (double)left + (double)right;
-            case MULTIPLY:
-                return (double)left * (double)right;
-            case DIVIDE:
-                return (double)left / (double)right;
-            case GREATER_THAN:
-                return (double)left > (double)right;
-            case GREATER_EQUAL:
-                return (double)left >= (double)right;
-            case LESS_THAN:
-                return (double)left < (double)right;
-            case LESS_EQUAL:
-                return (double)left <= (double)right;
+    private boolean evaluateVariable(Expression.VariableExpression expression) {
+        if (expression.depth >= 0 && globalEnvironment.isDouble(expression.depth, expression.slot)) {
+            number = globalEnvironment.getDouble(expression.depth, expression.slot);
+            return true;
         }
+        value = interpretVariable(expression);
+        return false;
+    }
 
-        return null;
+    private boolean evaluateLiteral(Expression.LiteralExpression expression) {
+        if (expression.literalValue instanceof Double literal) {
+            number = literal;
+            return true;
+        }
+        value = expression.literalValue;
+        return false;
     }
 
-    // Helper Methods
+    private boolean evaluateUnary(Expression.UnaryExpression expression) {
+        if (expression.operator.type == TokenType.NOT) {
+            value = !interpretCondition(expression.right);
+            return false;
+        }
+        if (evaluate(expression.right)) {
+            number = -number;
+            return true;
+        }
+        value = SpartieRuntime.negate(expression.operator, value);
+        return false;
+    }
 
-    // Test equivalency
-    private boolean isEquivalent(Object left, Object right) {
-        // They are equal under the following conditions:
-        // 1. They are both null
-        // 2. The equals method returns true (String or Double)
+    private boolean evaluateAssign(Expression.AssignmentExpression expression) {
+        boolean isNumber = evaluate(expression.value);
 
-        // We have to account a NPE
-        if (left == null && right == null) return true;
-        if (left == null || right == null) return false;
+        // The resolver could not find a declaration for the variable
+        if (expression.depth < 0) {
+            SpartieRuntime.undefinedVariable(expression.name);
+        }
 
-        return left.equals(right);
+        // Numbers are stored without boxing
+        if (isNumber) {
+            globalEnvironment.assignDouble(expression.depth, expression.slot, number);
+        }
+        else {
+            globalEnvironment.assign(expression.depth, expression.slot, value);
+        }
+        return isNumber;
     }
 
-    // False is literal false or null
-    private boolean isTrue(Object object) {
-        if (object == null) return false;
-        if (object instanceof Boolean) return (boolean)object;
-        return true;
-    }
+    private boolean evaluateHoisted(Expression.HoistedExpression expression) {
+        if (globalEnvironment.isDouble(expression.depth, expression.index)) {
+            number = globalEnvironment.getDouble(expression.depth, expression.index);
+            return true;
+        }
+        Object stored = globalEnvironment.get(expression.depth, expression.index);
+        if (stored != UNSET) {
+            value = stored;
+            return false;
+        }
 
-    // Validate the type
-    private void validateOperand(Token operator, Object operand) {
-        if (operand instanceof Double) return;
-        error("Invalid type on line " + operator.line + " : " + operator.text + operand);
+        // The first evaluation in the loop keeps its value in the slot for the rest
+        boolean isNumber = evaluate(expression.expression);
+        if (isNumber) {
+            globalEnvironment.assignDouble(expression.depth, expression.index, number);
+        }
+        else {
+            globalEnvironment.assign(expression.depth, expression.index, value);
+        }
+        return isNumber;
     }
 
-    private void validateOperands(Token operator, Object operand1, Object operand2) {
-        if (operand1 instanceof Double && operand2 instanceof Double) return;
-        error("Invalid type on line " + operator.line + " : " + operand1 + operator.text + operand2);
+    private boolean isArithmetic(TokenType type) {
+        return type == TokenType.ADD || type == TokenType.SUBTRACT || type == TokenType.MULTIPLY || type == TokenType.DIVIDE;
     }
 
-    private void error(String message) {
-        System.err.println(message);
-        System.exit(2);
+    private boolean isComparison(TokenType type) {
+        return type == TokenType.EQUIVALENT || type == TokenType.NOT_EQUAL ||
+                type == TokenType.GREATER_THAN || type == TokenType.GREATER_EQUAL ||
+                type == TokenType.LESS_THAN || type == TokenType.LESS_EQUAL;
     }
 }
@@ -0,0 +1,123 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import jdk.jfr.FlightRecorder;
+
+// Counters of what a run did, for telling whether time goes to lookups, scopes or output. They are off unless the JVM
+// is started with -Dspartie.metrics=true, or Main is given --metrics. ENABLED is a constant, so with the counters off
+// the JIT removes every check of it and they cost nothing. With them on, the counters are shared by every thread and
+// are also sent to JDK Flight Recorder once a second as a spartie.Metrics event.
+public class SpartieMetrics {
+    static final boolean ENABLED = Boolean.getBoolean("spartie.metrics");
+
+    // Lookups at this depth or deeper share the last counter
+    static final int DEPTHS = 8;
+
+    private static final LongAdder statements = new LongAdder();
+    private static final LongAdder[] lookups = new LongAdder[DEPTHS];
+    private static final LongAdder boxed = new LongAdder();
+    private static final LongAdder environments = new LongAdder();
+    private static final LongAdder scopes = new LongAdder();
+    private static final LongAdder printBytes = new LongAdder();
+
+    static {
+        for (int depth = 0; depth < DEPTHS; depth++) {
+            lookups[depth] = new LongAdder();
+        }
+        if (ENABLED) {
+            FlightRecorder.addPeriodicEvent(SpartieEvents.Metrics.class, SpartieMetrics::emit);
+        }
+    }
+
+    private SpartieMetrics() {
+    }
+
+    // Statements run by the tree interpreter
+    static void statement() {
+        statements.increment();
+    }
+
+    // A variable read that walked depth scopes up from where it was used
+    static void lookup(int depth) {
+        lookups[Math.min(depth, DEPTHS - 1)].increment();
+    }
+
+    // A number taken out of its unboxed slot as a Double
+    static void boxed() {
+        boxed.increment();
+    }
+
+    // Environments allocated. The interpreter reuses block environments, so this stays far below scopes.
+    static void environment() {
+        environments.increment();
+    }
+
+    // Blocks and loops entered that needed an environment
+    static void scope() {
+        scopes.increment();
+    }
+
+    static void printed(long bytes) {
+        printBytes.add(bytes);
+    }
+
+    // The stream when the counters are off, otherwise the stream counting the bytes written to it as print output
+    static OutputStream counted(OutputStream stream) {
+        if (!ENABLED) {
+            return stream;
+        }
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                printBytes.increment();
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+                printBytes.add(length);
+            }
+        };
+    }
+
+    // Every counter by name, in a fixed order
+    public static Map<String, Long> snapshot() {
+        Map<String, Long> counters = new LinkedHashMap<>();
+        counters.put("statements", statements.sum());
+        for (int depth = 0; depth < DEPTHS; depth++) {
+            counters.put(depth < DEPTHS - 1 ? "lookups.depth" + depth : "lookups.depth" + depth + "+", lookups[depth].sum());
+        }
+        counters.put("boxed", boxed.sum());
+        counters.put("environments", environments.sum());
+        counters.put("scopes", scopes.sum());
+        counters.put("printBytes", printBytes.sum());
+        return counters;
+    }
+
+    public static void report(PrintStream out) {
+        for (Map.Entry<String, Long> counter : snapshot().entrySet()) {
+            out.printf("%-20s %14d\n", counter.getKey(), counter.getValue());
+        }
+    }
+
+    private static void emit() {
+        SpartieEvents.Metrics event = new SpartieEvents.Metrics();
+        event.statements = statements.sum();
+        long total = 0;
+        for (LongAdder lookup : lookups) {
+            total += lookup.sum();
+        }
+        event.lookups = total;
+        event.localLookups = lookups[0].sum();
+        event.boxed = boxed.sum();
+        event.environments = environments.sum();
+        event.scopes = scopes.sum();
+        event.printBytes = printBytes.sum();
+        event.commit();
+    }
+}
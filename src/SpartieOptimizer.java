@@ -0,0 +1,581 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Rewrites the parsed program before it runs: operators on literals are folded into literals, variables that are
+// declared with a constant and never assigned again are replaced by that constant, and if/while statements whose
+// condition is a constant lose the branch that can never run. For loops get their loop invariant expressions hoisted
+// and are marked as counted loops where the shape allows. Nodes are rebuilt rather than changed in place.
+public class SpartieOptimizer {
+    // Innermost scope is last, each maps a name to the declaration it currently refers to
+    private final List<Map<String, Statement.VariableStatement>> scopes = new ArrayList<>();
+
+    // Declarations that may hold another value than their initializer's when they are read: some assignment writes to
+    // them, the same scope declares the name again and so reuses the variable, or a function reads them, which it may
+    // do before the declaration has run or after a later one has
+    private final Set<Statement.VariableStatement> reassigned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    // Number of function bodies around the statement being analyzed
+    private int functionDepth = 0;
+
+    // Stands in the set of names a loop may change when the loop calls a function, which may assign any global
+    private static final String CALLS = "()";
+
+    // Declarations whose value is known, the value may be null
+    private final Map<Statement.VariableStatement, Object> constants = new IdentityHashMap<>();
+
+    // Propagating a constant relies on having seen every assignment in the program, which is not the case when
+    // statements are optimized one at a time as they are parsed
+    private final boolean propagateConstants;
+
+    public SpartieOptimizer() {
+        this(true);
+    }
+
+    public SpartieOptimizer(boolean propagateConstants) {
+        this.propagateConstants = propagateConstants;
+    }
+
+    public List<Statement> optimize(List<Statement> statements) {
+        // First find every variable that is assigned after its declaration
+        if (propagateConstants) {
+            scopes.add(new HashMap<>());
+            for (Statement statement : statements) {
+                analyze(statement);
+            }
+        }
+
+        // Then rewrite the program in order, so a constant is known before its uses
+        scopes.clear();
+        scopes.add(new HashMap<>());
+        return optimizeAll(statements);
+    }
+
+    // Analysis
+    private void analyze(Statement statement) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> analyze(printStatement.expression);
+            case Statement.ExpressionStatement expressionStatement -> analyze(expressionStatement.expression);
+            case Statement.VariableStatement variableStatement -> {
+                analyze(variableStatement.initializer);
+                Statement.VariableStatement previous = scopes.getLast().get(variableStatement.name.text);
+                if (previous != null) {
+                    reassigned.add(previous);
+                    reassigned.add(variableStatement);
+                }
+                declare(variableStatement);
+            }
+            case Statement.BlockStatement blockStatement -> {
+                scopes.add(new HashMap<>());
+                for (Statement inner : blockStatement.statements) {
+                    analyze(inner);
+                }
+                scopes.removeLast();
+            }
+            case Statement.IfStatement ifStatement -> {
+                analyze(ifStatement.condition);
+                analyze(ifStatement.thenBranch);
+                analyze(ifStatement.elseBranch);
+            }
+            case Statement.WhileStatement whileStatement -> {
+                analyze(whileStatement.condition);
+                analyze(whileStatement.body);
+            }
+            case Statement.ForStatement forStatement -> {
+                scopes.add(new HashMap<>());
+                analyze(forStatement.initializer);
+                analyze(forStatement.condition);
+                analyze(forStatement.body);
+                analyze(forStatement.increment);
+                scopes.removeLast();
+            }
+            case Statement.FunctionStatement functionStatement -> {
+                declareParameters(functionStatement);
+                functionDepth++;
+                for (Statement inner : functionStatement.body) {
+                    analyze(inner);
+                }
+                functionDepth--;
+                scopes.removeLast();
+            }
+            case Statement.ReturnStatement returnStatement -> analyze(returnStatement.value);
+            case null, default -> {}
+        };
+    }
+
+    private void analyze(Expression expression) {
+        switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> {
+                analyze(logicalExpression.left);
+                analyze(logicalExpression.right);
+            }
+            case Expression.AssignmentExpression assignmentExpression -> {
+                analyze(assignmentExpression.value);
+                Statement.VariableStatement declaration = lookup(assignmentExpression.name.text);
+                if (declaration != null) {
+                    reassigned.add(declaration);
+                }
+            }
+            case Expression.VariableExpression variableExpression -> {
+                Statement.VariableStatement declaration = lookup(variableExpression.name.text);
+                if (functionDepth > 0 && declaration != null && scopes.getFirst().get(declaration.name.text) == declaration) {
+                    reassigned.add(declaration);
+                }
+            }
+            case Expression.ParenthesesExpression parenthesesExpression -> analyze(parenthesesExpression.expression);
+            case Expression.UnaryExpression unaryExpression -> analyze(unaryExpression.right);
+            case Expression.BinaryExpression binaryExpression -> {
+                analyze(binaryExpression.left);
+                analyze(binaryExpression.right);
+            }
+            case Expression.CallExpression callExpression -> {
+                for (Expression argument : callExpression.arguments) {
+                    analyze(argument);
+                }
+            }
+            case null, default -> {}
+        };
+    }
+
+    // Statement Implementation
+    private List<Statement> optimizeAll(List<Statement> statements) {
+        List<Statement> optimized = new ArrayList<>();
+        for (Statement statement : statements) {
+            Statement result = optimize(statement);
+            if (result != null) {
+                optimized.add(result);
+            }
+        }
+        return optimized;
+    }
+
+    // Returns the rewritten statement, or null when it can be dropped
+    private Statement optimize(Statement statement) {
+        return switch(statement) {
+            case Statement.PrintStatement printStatement ->
+                    new Statement.PrintStatement(statement.line, optimize(printStatement.expression));
+            case Statement.ExpressionStatement expressionStatement -> optimizeExpressionStatement(expressionStatement);
+            case Statement.VariableStatement variableStatement -> optimizeVariableStatement(variableStatement);
+            case Statement.BlockStatement blockStatement -> optimizeBlockStatement(blockStatement);
+            case Statement.IfStatement ifStatement -> optimizeIfStatement(ifStatement);
+            case Statement.WhileStatement whileStatement -> optimizeWhileStatement(whileStatement);
+            case Statement.ForStatement forStatement -> optimizeForStatement(forStatement);
+            case Statement.FunctionStatement functionStatement -> optimizeFunctionStatement(functionStatement);
+            case Statement.ReturnStatement returnStatement ->
+                    new Statement.ReturnStatement(statement.line, returnStatement.keyword, optimize(returnStatement.value));
+            case null, default -> statement;
+        };
+    }
+
+    private Statement optimizeExpressionStatement(Statement.ExpressionStatement statement) {
+        Expression expression = optimize(statement.expression);
+
+        // A literal on its own does nothing
+        if (expression instanceof Expression.LiteralExpression) {
+            return null;
+        }
+        return new Statement.ExpressionStatement(statement.line, expression);
+    }
+
+    private Statement optimizeVariableStatement(Statement.VariableStatement statement) {
+        Expression initializer = statement.initializer == null ? null : optimize(statement.initializer);
+        declare(statement);
+
+        if (propagateConstants && !reassigned.contains(statement)) {
+            if (initializer == null) {
+                constants.put(statement, null);
+            }
+            else if (initializer instanceof Expression.LiteralExpression literalExpression) {
+                constants.put(statement, literalExpression.literalValue);
+            }
+        }
+
+        return new Statement.VariableStatement(statement.line, statement.name, initializer);
+    }
+
+    private Statement optimizeBlockStatement(Statement.BlockStatement statement) {
+        scopes.add(new HashMap<>());
+        List<Statement> statements = optimizeAll(statement.statements);
+        scopes.removeLast();
+
+        return new Statement.BlockStatement(statement.line, statements);
+    }
+
+    private Statement optimizeFunctionStatement(Statement.FunctionStatement statement) {
+        declareParameters(statement);
+        List<Statement> body = optimizeAll(statement.body);
+        scopes.removeLast();
+
+        return new Statement.FunctionStatement(statement.line, statement.name, statement.parameters, body);
+    }
+
+    private Statement optimizeIfStatement(Statement.IfStatement statement) {
+        Expression condition = optimize(statement.condition);
+
+        // Only one branch can ever run. A branch cannot declare a variable, so it can stand on its own.
+        if (condition instanceof Expression.LiteralExpression literalExpression) {
+            return optimize(SpartieRuntime.isTrue(literalExpression.literalValue) ? statement.thenBranch : statement.elseBranch);
+        }
+
+        return new Statement.IfStatement(statement.line, condition, optimize(statement.thenBranch),
+                optimize(statement.elseBranch));
+    }
+
+    private Statement optimizeWhileStatement(Statement.WhileStatement statement) {
+        Expression condition = optimize(statement.condition);
+
+        // The body can never run
+        if (condition instanceof Expression.LiteralExpression literalExpression
+                && !SpartieRuntime.isTrue(literalExpression.literalValue)) {
+            return null;
+        }
+
+        return new Statement.WhileStatement(statement.line, condition, optimize(statement.body));
+    }
+
+    private Statement optimizeForStatement(Statement.ForStatement statement) {
+        scopes.add(new HashMap<>());
+        Statement initializer = optimize(statement.initializer);
+        Expression condition = optimize(statement.condition);
+        Statement body = optimize(statement.body);
+        Expression increment = statement.increment == null ? null : optimize(statement.increment);
+        scopes.removeLast();
+
+        // The body can never run, but the initializer still does
+        if (condition instanceof Expression.LiteralExpression literalExpression
+                && !SpartieRuntime.isTrue(literalExpression.literalValue)) {
+            return initializer == null ? null : new Statement.BlockStatement(statement.line, List.of(initializer));
+        }
+
+        // Every name the loop declares or assigns may hold a different value on the next iteration
+        Set<String> variant = new HashSet<>();
+        collectVariant(initializer, variant);
+        collectVariant(condition, variant);
+        collectVariant(body, variant);
+        collectVariant(increment, variant);
+
+        LoopHoister hoister = new LoopHoister(variant);
+        Statement.ForStatement loop = new Statement.ForStatement(statement.line, initializer, hoister.hoist(condition),
+                hoister.hoist(increment), hoister.hoist(body));
+        loop.hoistedCount = hoister.count;
+        loop.countedLoop = countedLoop(loop, variant);
+        return loop;
+    }
+
+    // The counter must be declared by the loop, compared against a bound the loop never changes and stepped by a
+    // constant. The increment is the only place that may assign it.
+    private static Statement.CountedLoop countedLoop(Statement.ForStatement loop, Set<String> variant) {
+        if (!(loop.initializer instanceof Statement.VariableStatement counter) || counter.initializer == null) {
+            return null;
+        }
+        String name = counter.name.text;
+
+        if (!(loop.condition instanceof Expression.BinaryExpression comparison)
+                || !(comparison.left instanceof Expression.VariableExpression left) || !left.name.text.equals(name)) {
+            return null;
+        }
+        TokenType type = comparison.operator.type;
+        if (type != TokenType.LESS_THAN && type != TokenType.LESS_EQUAL
+                && type != TokenType.GREATER_THAN && type != TokenType.GREATER_EQUAL) {
+            return null;
+        }
+        Expression bound = comparison.right;
+        boolean invariantBound = bound instanceof Expression.LiteralExpression
+                || bound instanceof Expression.HoistedExpression
+                || bound instanceof Expression.VariableExpression variable && !variant.contains(variable.name.text)
+                && !variant.contains(CALLS);
+        if (!invariantBound) {
+            return null;
+        }
+
+        if (!(loop.increment instanceof Expression.AssignmentExpression increment) || !increment.name.text.equals(name)
+                || !(increment.value instanceof Expression.BinaryExpression step)
+                || !(step.left instanceof Expression.VariableExpression stepped) || !stepped.name.text.equals(name)
+                || !(step.right instanceof Expression.LiteralExpression amount) || !(amount.literalValue instanceof Double)) {
+            return null;
+        }
+        double delta = (Double) amount.literalValue;
+        if (step.operator.type == TokenType.SUBTRACT) {
+            delta = -delta;
+        }
+        else if (step.operator.type != TokenType.ADD) {
+            return null;
+        }
+
+        Set<String> assignedInBody = new HashSet<>();
+        collectVariant(loop.body, assignedInBody);
+        if (assignedInBody.contains(name)) {
+            return null;
+        }
+
+        return new Statement.CountedLoop(counter, type, bound, delta);
+    }
+
+    // Adds every name the statement declares or assigns
+    private static void collectVariant(Statement statement, Set<String> names) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> collectVariant(printStatement.expression, names);
+            case Statement.ExpressionStatement expressionStatement -> collectVariant(expressionStatement.expression, names);
+            case Statement.VariableStatement variableStatement -> {
+                collectVariant(variableStatement.initializer, names);
+                names.add(variableStatement.name.text);
+            }
+            case Statement.BlockStatement blockStatement -> {
+                for (Statement inner : blockStatement.statements) {
+                    collectVariant(inner, names);
+                }
+            }
+            case Statement.IfStatement ifStatement -> {
+                collectVariant(ifStatement.condition, names);
+                collectVariant(ifStatement.thenBranch, names);
+                collectVariant(ifStatement.elseBranch, names);
+            }
+            case Statement.WhileStatement whileStatement -> {
+                collectVariant(whileStatement.condition, names);
+                collectVariant(whileStatement.body, names);
+            }
+            case Statement.ForStatement forStatement -> {
+                collectVariant(forStatement.initializer, names);
+                collectVariant(forStatement.condition, names);
+                collectVariant(forStatement.body, names);
+                collectVariant(forStatement.increment, names);
+            }
+            case Statement.ReturnStatement returnStatement -> collectVariant(returnStatement.value, names);
+            case null, default -> {}
+        };
+    }
+
+    private static void collectVariant(Expression expression, Set<String> names) {
+        switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> {
+                collectVariant(logicalExpression.left, names);
+                collectVariant(logicalExpression.right, names);
+            }
+            case Expression.AssignmentExpression assignmentExpression -> {
+                collectVariant(assignmentExpression.value, names);
+                names.add(assignmentExpression.name.text);
+            }
+            case Expression.ParenthesesExpression parenthesesExpression -> collectVariant(parenthesesExpression.expression, names);
+            case Expression.HoistedExpression hoistedExpression -> collectVariant(hoistedExpression.expression, names);
+            case Expression.UnaryExpression unaryExpression -> collectVariant(unaryExpression.right, names);
+            case Expression.BinaryExpression binaryExpression -> {
+                collectVariant(binaryExpression.left, names);
+                collectVariant(binaryExpression.right, names);
+            }
+            case Expression.CallExpression callExpression -> {
+                for (Expression argument : callExpression.arguments) {
+                    collectVariant(argument, names);
+                }
+                names.add(CALLS);
+            }
+            case null, default -> {}
+        };
+    }
+
+    // Replaces the largest loop invariant expressions of one for loop with HoistedExpressions. Expressions inside a
+    // nested for loop are left to that loop, so a hoisted expression always belongs to the innermost loop around it.
+    private static class LoopHoister {
+        private final Set<String> variant;
+        private int count = 0;
+
+        LoopHoister(Set<String> variant) {
+            this.variant = variant;
+        }
+
+        Statement hoist(Statement statement) {
+            return switch(statement) {
+                case Statement.PrintStatement printStatement ->
+                        new Statement.PrintStatement(statement.line, hoist(printStatement.expression));
+                case Statement.ExpressionStatement expressionStatement ->
+                        new Statement.ExpressionStatement(statement.line, hoist(expressionStatement.expression));
+                case Statement.VariableStatement variableStatement -> variableStatement.initializer == null ? variableStatement
+                        : new Statement.VariableStatement(statement.line, variableStatement.name,
+                                hoist(variableStatement.initializer));
+                case Statement.BlockStatement blockStatement -> {
+                    List<Statement> statements = new ArrayList<>();
+                    for (Statement inner : blockStatement.statements) {
+                        statements.add(hoist(inner));
+                    }
+                    yield new Statement.BlockStatement(statement.line, statements);
+                }
+                case Statement.IfStatement ifStatement -> new Statement.IfStatement(statement.line,
+                        hoist(ifStatement.condition), hoist(ifStatement.thenBranch), hoist(ifStatement.elseBranch));
+                case Statement.WhileStatement whileStatement -> new Statement.WhileStatement(statement.line,
+                        hoist(whileStatement.condition), hoist(whileStatement.body));
+                case null, default -> statement;
+            };
+        }
+
+        Expression hoist(Expression expression) {
+            if (expression == null) {
+                return null;
+            }
+            if (isInvariant(expression)) {
+                // Literals and variables are as cheap to evaluate as a hoisted value
+                if (expression instanceof Expression.LiteralExpression || expression instanceof Expression.VariableExpression) {
+                    return expression;
+                }
+                return new Expression.HoistedExpression(expression, count++);
+            }
+
+            return switch (expression) {
+                case Expression.LogicalExpression logicalExpression ->
+                        new Expression.LogicalExpression(hoist(logicalExpression.left), logicalExpression.operator, hoist(logicalExpression.right));
+                case Expression.AssignmentExpression assignmentExpression ->
+                        new Expression.AssignmentExpression(assignmentExpression.name, hoist(assignmentExpression.value));
+                case Expression.ParenthesesExpression parenthesesExpression ->
+                        new Expression.ParenthesesExpression(hoist(parenthesesExpression.expression));
+                case Expression.UnaryExpression unaryExpression ->
+                        new Expression.UnaryExpression(unaryExpression.operator, hoist(unaryExpression.right));
+                case Expression.BinaryExpression binaryExpression ->
+                        new Expression.BinaryExpression(hoist(binaryExpression.left), binaryExpression.operator, hoist(binaryExpression.right));
+                default -> expression;
+            };
+        }
+
+        // Whether the expression has the same value on every iteration. Evaluating it has no side effects, so the
+        // first evaluation can stand in for the rest.
+        private boolean isInvariant(Expression expression) {
+            return switch (expression) {
+                case Expression.LiteralExpression literalExpression -> true;
+                case Expression.VariableExpression variableExpression ->
+                        !variant.contains(variableExpression.name.text) && !variant.contains(CALLS);
+                case Expression.LogicalExpression logicalExpression ->
+                        isInvariant(logicalExpression.left) && isInvariant(logicalExpression.right);
+                case Expression.ParenthesesExpression parenthesesExpression -> isInvariant(parenthesesExpression.expression);
+                case Expression.UnaryExpression unaryExpression -> isInvariant(unaryExpression.right);
+                case Expression.BinaryExpression binaryExpression ->
+                        isInvariant(binaryExpression.left) && isInvariant(binaryExpression.right);
+                default -> false;
+            };
+        }
+    }
+
+    // Expression Implementation
+    private Expression optimize(Expression expression) {
+        return switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> optimizeLogical(logicalExpression);
+            case Expression.AssignmentExpression assignmentExpression ->
+                    new Expression.AssignmentExpression(assignmentExpression.name, optimize(assignmentExpression.value));
+            case Expression.VariableExpression variableExpression -> optimizeVariable(variableExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> optimizeParenthesis(parenthesesExpression);
+            case Expression.UnaryExpression unaryExpression -> optimizeUnary(unaryExpression);
+            case Expression.BinaryExpression binaryExpression -> optimizeBinary(binaryExpression);
+            case Expression.CallExpression callExpression -> optimizeCall(callExpression);
+            case null, default -> expression;
+        };
+    }
+
+    private Expression optimizeLogical(Expression.LogicalExpression expression) {
+        Expression left = optimize(expression.left);
+        Expression right = optimize(expression.right);
+
+        // A constant left side decides whether the result is the left value or the right expression
+        if (left instanceof Expression.LiteralExpression literalExpression) {
+            boolean leftIsTrue = SpartieRuntime.isTrue(literalExpression.literalValue);
+            boolean shortCircuits = expression.operator.type == TokenType.OR ? leftIsTrue : !leftIsTrue;
+            return shortCircuits ? left : right;
+        }
+
+        return new Expression.LogicalExpression(left, expression.operator, right);
+    }
+
+    private Expression optimizeVariable(Expression.VariableExpression expression) {
+        Statement.VariableStatement declaration = lookup(expression.name.text);
+        if (declaration != null && constants.containsKey(declaration)) {
+            return new Expression.LiteralExpression(constants.get(declaration));
+        }
+        return expression;
+    }
+
+    private Expression optimizeCall(Expression.CallExpression expression) {
+        List<Expression> arguments = new ArrayList<>();
+        for (Expression argument : expression.arguments) {
+            arguments.add(optimize(argument));
+        }
+        return new Expression.CallExpression(expression.name, arguments);
+    }
+
+    private Expression optimizeParenthesis(Expression.ParenthesesExpression expression) {
+        Expression inner = optimize(expression.expression);
+        if (inner instanceof Expression.LiteralExpression) {
+            return inner;
+        }
+        return new Expression.ParenthesesExpression(inner);
+    }
+
+    private Expression optimizeUnary(Expression.UnaryExpression expression) {
+        Expression right = optimize(expression.right);
+
+        if (right instanceof Expression.LiteralExpression literalExpression) {
+            Object value = literalExpression.literalValue;
+            if (expression.operator.type == TokenType.NOT) {
+                return new Expression.LiteralExpression(!SpartieRuntime.isTrue(value));
+            }
+            if (value instanceof Double number) {
+                return new Expression.LiteralExpression(-number);
+            }
+        }
+
+        return new Expression.UnaryExpression(expression.operator, right);
+    }
+
+    private Expression optimizeBinary(Expression.BinaryExpression expression) {
+        Expression left = optimize(expression.left);
+        Expression right = optimize(expression.right);
+
+        // Operations that would fail are left for the run time to report
+        if (left instanceof Expression.LiteralExpression leftLiteral
+                && right instanceof Expression.LiteralExpression rightLiteral
+                && isDefined(expression.operator.type, leftLiteral.literalValue, rightLiteral.literalValue)) {
+            // A literal is always a plain String, never a rope
+            return new Expression.LiteralExpression(Rope.flatten(
+                    SpartieRuntime.binary(expression.operator, leftLiteral.literalValue, rightLiteral.literalValue)));
+        }
+
+        return new Expression.BinaryExpression(left, expression.operator, right);
+    }
+
+    // Helper Methods
+
+    // Whether SpartieRuntime.binary produces a value rather than an error for these operands
+    private static boolean isDefined(TokenType operator, Object left, Object right) {
+        if (operator == TokenType.EQUIVALENT || operator == TokenType.NOT_EQUAL) {
+            return true;
+        }
+        if (left instanceof Double && right instanceof Double) {
+            return true;
+        }
+        return operator == TokenType.ADD
+                && (left instanceof String || left instanceof Double)
+                && (right instanceof String || right instanceof Double);
+    }
+
+    // Opens the scope of the function's body with its parameters in it. A parameter has a new value on every call, so
+    // it stands for no constant.
+    private void declareParameters(Statement.FunctionStatement statement) {
+        scopes.add(new HashMap<>());
+        for (Token parameter : statement.parameters) {
+            declare(new Statement.VariableStatement(parameter.line, parameter, null));
+        }
+    }
+
+    private void declare(Statement.VariableStatement statement) {
+        scopes.getLast().put(statement.name.text, statement);
+    }
+
+    private Statement.VariableStatement lookup(String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Statement.VariableStatement declaration = scopes.get(i).get(name);
+            if (declaration != null) {
+                return declaration;
+            }
+        }
+        return null;
+    }
+}
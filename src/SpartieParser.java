@@ -1,27 +1,54 @@
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 // From Crafting Interpreters
 public class SpartieParser {
-    private static class ParseError extends RuntimeException {}
-    private List<Token> tokens;
-    private int current = 0;
+    private final TokenStream tokens;
+
+    // Whether the statements being parsed are in the body of a function, where return is allowed
+    private boolean inFunction = false;
 
     public SpartieParser(List<Token> tokens) {
-        this.tokens = tokens;
+        this.tokens = new TokenStream.Listed(tokens);
+    }
+
+    public SpartieParser(TokenBuffer tokens) {
+        this.tokens = new TokenStream.Buffered(tokens);
+    }
+
+    // Pulls tokens from the scanner as the parse reaches them, for use with nextStatement
+    public SpartieParser(SpartieScanner scanner) {
+        this.tokens = new TokenStream.Streamed(scanner);
     }
 
     public List<Statement> parse() {
         List<Statement> statements = new ArrayList<>();
         while (! isAtEnd()) {
-            statements.add(declaration());
+            statements.add(topLevelDeclaration());
         }
 
         return statements;
     }
 
+    // Parses one top level statement, or returns null at the end of the program
+    public Statement nextStatement() {
+        if (isAtEnd()) {
+            return null;
+        }
+        return topLevelDeclaration();
+    }
+
+    private Statement topLevelDeclaration() {
+        if (match(TokenType.FUN)) {
+            return functionDeclaration();
+        }
+        return declaration();
+    }
+
     private Statement declaration() {
+        if (check(TokenType.FUN)) {
+            throw error(peek(), "Functions can only be declared at top level.");
+        }
         if (match(TokenType.VAR)) {
             return variableDeclaration();
         }
@@ -35,7 +62,8 @@ public class SpartieParser {
             return printStatement();
         }
         else if (match(TokenType.LEFT_BRACE)) {
-            return new Statement.BlockStatement(block());
+            int line = tokens.previousLine();
+            return new Statement.BlockStatement(line, block());
         }
         else if (match(TokenType.IF)) {
             return ifStatement();
@@ -46,11 +74,15 @@ public class SpartieParser {
         else if (match(TokenType.FOR)) {
             return forStatement();
         }
+        else if (match(TokenType.RETURN)) {
+            return returnStatement();
+        }
 
         return expressionStatement();
     }
 
     private Statement forStatement() {
+        int line = tokens.previousLine();
         consume(TokenType.LEFT_PAREN, "Missing '(' after 'for'.");
 
         Statement initializer;
@@ -77,37 +109,69 @@ public class SpartieParser {
         consume(TokenType.RIGHT_PAREN, "Expect ')' after for condition.");
         Statement body = statement();
 
-        // Completed TODO: We have the initializer, we have the condition, we have the increment. Take those components
-        //  and convert into while loop. Hint: Build a block statement and then a while statement using the condition.
-
-        if (increment != null) {
-            body = new Statement.BlockStatement(Arrays.asList(body, new Statement.ExpressionStatement(increment)));
-        }
-
         if (condition == null) {
             condition = new Expression.LiteralExpression(true);
         }
 
-        body = new Statement.WhileStatement(condition, body);
+        // Kept as its own statement rather than lowered to a while loop, so the optimizer can recognize counted loops
+        return new Statement.ForStatement(line, initializer, condition, increment, body);
+    }
 
-        if (initializer != null) {
-            body = new Statement.BlockStatement(Arrays.asList(initializer, body));
+    private Statement functionDeclaration() {
+        int line = tokens.previousLine();
+        consume(TokenType.IDENTIFIER, "Expected function name.");
+        Token name = previous();
+
+        consume(TokenType.LEFT_PAREN, "Expected '(' after function name.");
+        List<Token> parameters = new ArrayList<>();
+        if (!check(TokenType.RIGHT_PAREN)) {
+            do {
+                consume(TokenType.IDENTIFIER, "Expected parameter name.");
+                Token parameter = previous();
+                for (Token other : parameters) {
+                    if (other.text.equals(parameter.text)) {
+                        throw error(parameter, "Duplicate parameter name.");
+                    }
+                }
+                parameters.add(parameter);
+            } while (match(TokenType.COMMA));
         }
+        consume(TokenType.RIGHT_PAREN, "Expected ')' after parameters.");
 
-        return body;
+        consume(TokenType.LEFT_BRACE, "Expected '{' before function body.");
+        inFunction = true;
+        List<Statement> body = block();
+        inFunction = false;
 
+        return new Statement.FunctionStatement(line, name, parameters, body);
+    }
+
+    private Statement returnStatement() {
+        Token keyword = previous();
+        if (!inFunction) {
+            throw error(keyword, "Can't return from top-level code.");
+        }
+
+        Expression value = null;
+        if (!check(TokenType.SEMICOLON)) {
+            value = expression();
+        }
+        consume(TokenType.SEMICOLON, "Expected ';' after return value.");
+        return new Statement.ReturnStatement(keyword.line, keyword, value);
     }
 
     private Statement whileStatement() {
+        int line = tokens.previousLine();
         consume(TokenType.LEFT_PAREN, "Missing '(' after 'while'.");
         Expression condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after while condition.");
 
         Statement body = statement();
 
-        return new Statement.WhileStatement(condition, body);
+        return new Statement.WhileStatement(line, condition, body);
     }
     private Statement ifStatement() {
+        int line = tokens.previousLine();
         consume(TokenType.LEFT_PAREN, "Missing '(' after 'if'.");
         Expression condition = expression();
         consume(TokenType.RIGHT_PAREN, "Expect ')' after if condition.");
@@ -119,7 +183,7 @@ public class SpartieParser {
             elseBranch = statement();
         }
 
-        return new Statement.IfStatement(condition, thenBranch, elseBranch);
+        return new Statement.IfStatement(line, condition, thenBranch, elseBranch);
     }
 
     private List<Statement> block() {
@@ -176,8 +240,11 @@ public class SpartieParser {
     }
 
     private Statement variableDeclaration() {
+        int line = tokens.previousLine();
+
         // Check first to make sure we have a name for the variable
-        Token variableName = consume(TokenType.IDENTIFIER, "Expected variable name.");
+        consume(TokenType.IDENTIFIER, "Expected variable name.");
+        Token variableName = previous();
 
         // By default, no expression exists
         Expression initializer = null;
@@ -190,19 +257,21 @@ public class SpartieParser {
 
         consume(TokenType.SEMICOLON, "Expected ';' at end of variable declaration");
 
-        return new Statement.VariableStatement(variableName, initializer);
+        return new Statement.VariableStatement(line, variableName, initializer);
     }
 
     private Statement printStatement() {
+        int line = tokens.previousLine();
         Expression expression = expression();
         consume(TokenType.SEMICOLON, "Expected ';' at end of print.");
-        return new Statement.PrintStatement(expression);
+        return new Statement.PrintStatement(line, expression);
     }
 
     private Statement expressionStatement() {
+        int line = tokens.peekLine();
         Expression expression = expression();
         consume(TokenType.SEMICOLON, "Expected ';' at end of expression.");
-        return new Statement.ExpressionStatement(expression);
+        return new Statement.ExpressionStatement(line, expression);
     }
 
     private Expression expression() {
@@ -264,7 +333,28 @@ public class SpartieParser {
             return new Expression.UnaryExpression(operator, right);
         }
 
-        return primary();
+        return call();
+    }
+
+    private Expression call() {
+        Expression expression = primary();
+
+        if (match(TokenType.LEFT_PAREN)) {
+            if (!(expression instanceof Expression.VariableExpression variableExpression)) {
+                throw error(previous(), "Can only call functions by name.");
+            }
+
+            List<Expression> arguments = new ArrayList<>();
+            if (!check(TokenType.RIGHT_PAREN)) {
+                do {
+                    arguments.add(expression());
+                } while (match(TokenType.COMMA));
+            }
+            consume(TokenType.RIGHT_PAREN, "Expected ')' after arguments.");
+            return new Expression.CallExpression(variableExpression.name, arguments);
+        }
+
+        return expression;
     }
 
     private Expression primary() {
@@ -287,19 +377,22 @@ public class SpartieParser {
     }
 
     // Error reporting
-    private Token consume(TokenType type, String message) {
-        if (check(type)) return advance();
+
+    // Neither consume nor advance return the token, so the tokens the parser skips over are never created
+    private void consume(TokenType type, String message) {
+        if (check(type)) {
+            advance();
+            return;
+        }
 
         throw error(peek(), message);
     }
 
-    static ParseError error(Token token, String message) {
+    static SpartieError error(Token token, String message) {
         if (token.type == TokenType.EOF) {
-            System.err.println("Error occurred on line: " + token.line + " at end " + message);
-        } else {
-            System.err.println(token.line + " at '" + token.text + "'" + message);
+            return new SpartieError("Error occurred on line: " + token.line + " at end " + message, ErrorCode.PARSE_ERROR);
         }
-        return new ParseError();
+        return new SpartieError(token.line + " at '" + token.text + "'" + message, ErrorCode.PARSE_ERROR);
     }
 
     // Utility functions
@@ -315,23 +408,22 @@ public class SpartieParser {
 
     private boolean check(TokenType type) {
         if (isAtEnd()) return false;
-        return peek().type == type;
+        return tokens.peekType() == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) current++;
-        return previous();
+    private void advance() {
+        if (!isAtEnd()) tokens.advance();
     }
 
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return tokens.peekType() == TokenType.EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.peek();
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return tokens.previous();
     }
 }
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+// Finds where a script spends its time. The interpreter counts every statement it runs against the statement's line
+// and keeps a stack of the statements it is inside of, and a sampler thread looks at that stack every millisecond.
+// The time between two samples goes to the lines on the stack, so each line gets the time spent on it (self) and in
+// the statements under it (total). The stacks seen are also kept in the collapsed format that flame graph tools read,
+// one line per stack: the frames from the outermost in, separated by ';', then the number of samples.
+//
+// The interpreter only writes a few fields per statement and never waits on the sampler, so the cost is small enough
+// to leave on. A statement is counted against the line the parser recorded for it, that of its keyword.
+public class SpartieProfiler {
+    private static final long INTERVAL = 1_000_000;
+
+    private static final VarHandle DEPTH;
+
+    static {
+        try {
+            DEPTH = MethodHandles.lookup().findVarHandle(SpartieProfiler.class, "depth", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Written by the interpreter. The sampler reads depth first, and the release store of depth makes the entries
+    // below it visible. An entry above it may be stale, a sample is only a guess at one moment anyway.
+    private final int[] hits;
+    private Statement[] stack = new Statement[64];
+    @SuppressWarnings("unused")
+    private int depth = 0;
+    private long statementsRun = 0;
+
+    // Written by the sampler
+    private final long[] selfTime;
+    private final long[] totalTime;
+    private final int[] lastSample;
+    private final Map<String, long[]> stacks = new HashMap<>();
+    private int samples = 0;
+    private long sampledTime = 0;
+
+    private volatile boolean running = false;
+    private Thread sampler;
+
+    public SpartieProfiler(List<Statement> statements) {
+        int lines = 0;
+        for (Statement statement : statements) {
+            lines = Math.max(lines, maxLine(statement));
+        }
+
+        hits = new int[lines + 1];
+        selfTime = new long[lines + 1];
+        totalTime = new long[lines + 1];
+        lastSample = new int[lines + 1];
+    }
+
+    public void start() {
+        running = true;
+        sampler = Thread.ofPlatform().daemon().name("spartie-profiler").start(this::sample);
+    }
+
+    public void stop() {
+        running = false;
+        LockSupport.unpark(sampler);
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    void enter(Statement statement) {
+        int top = (int) DEPTH.getOpaque(this);
+        if (top == stack.length) {
+            stack = Arrays.copyOf(stack, top * 2);
+        }
+        stack[top] = statement;
+        DEPTH.setRelease(this, top + 1);
+        hits[statement.line]++;
+        statementsRun++;
+    }
+
+    void exit() {
+        DEPTH.setRelease(this, (int) DEPTH.getOpaque(this) - 1);
+    }
+
+    // An error leaves the statements it came out of without exiting them
+    void unwind() {
+        DEPTH.setRelease(this, 0);
+    }
+
+    private void sample() {
+        long last = System.nanoTime();
+        while (running) {
+            LockSupport.parkNanos(INTERVAL);
+            long now = System.nanoTime();
+            record(now - last);
+            last = now;
+        }
+    }
+
+    private void record(long elapsed) {
+        int top = (int) DEPTH.getAcquire(this);
+        Statement[] frames = stack;
+        top = Math.min(top, frames.length);
+        if (top == 0) {
+            return;
+        }
+
+        samples++;
+        sampledTime += elapsed;
+        StringBuilder key = new StringBuilder("main");
+        Statement statement = null;
+        for (int i = 0; i < top; i++) {
+            statement = frames[i];
+            // A line with several statements on the stack, a loop and its body on one line, counts once
+            if (lastSample[statement.line] != samples) {
+                lastSample[statement.line] = samples;
+                totalTime[statement.line] += elapsed;
+            }
+            key.append(';').append(kind(statement)).append(':').append(statement.line);
+        }
+        selfTime[statement.line] += elapsed;
+        stacks.computeIfAbsent(key.toString(), k -> new long[1])[0]++;
+    }
+
+    // Lines that ran, the most self time first, with the source text of each line when it is known
+    public void report(PrintStream out, List<String> source) {
+        List<Integer> lines = new ArrayList<>();
+        for (int line = 1; line < hits.length; line++) {
+            if (hits[line] > 0 || totalTime[line] > 0) {
+                lines.add(line);
+            }
+        }
+        lines.sort((a, b) -> selfTime[a] != selfTime[b] ? Long.compare(selfTime[b], selfTime[a])
+                : totalTime[a] != totalTime[b] ? Long.compare(totalTime[b], totalTime[a]) : Integer.compare(hits[b], hits[a]));
+
+        out.printf("Profile: %d statements run, %d samples over %.1f ms\n", statementsRun, samples, sampledTime / 1e6);
+        out.printf("%6s %12s %10s %10s  %s\n", "line", "hits", "self ms", "total ms", "source");
+        for (int line : lines) {
+            String text = line <= source.size() ? source.get(line - 1).strip() : "";
+            out.printf("%6d %12d %10.1f %10.1f  %s\n", line, hits[line], selfTime[line] / 1e6, totalTime[line] / 1e6, text);
+        }
+    }
+
+    public void writeStacks(Path path) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path)) {
+            for (Map.Entry<String, long[]> entry : stacks.entrySet()) {
+                writer.write(entry.getKey() + " " + entry.getValue()[0] + "\n");
+            }
+        }
+    }
+
+    static String kind(Statement statement) {
+        return switch (statement) {
+            case Statement.PrintStatement printStatement -> "print";
+            case Statement.ExpressionStatement expressionStatement -> "expression";
+            case Statement.VariableStatement variableStatement -> "var";
+            case Statement.IfStatement ifStatement -> "if";
+            case Statement.WhileStatement whileStatement -> "while";
+            case Statement.ForStatement forStatement -> "for";
+            case Statement.FunctionStatement functionStatement -> "fun";
+            case Statement.ReturnStatement returnStatement -> "return";
+            default -> "statement";
+        };
+    }
+
+    private static int maxLine(Statement statement) {
+        return switch (statement) {
+            case Statement.BlockStatement blockStatement -> {
+                int line = statement.line;
+                for (Statement inner : blockStatement.statements) {
+                    line = Math.max(line, maxLine(inner));
+                }
+                yield line;
+            }
+            case Statement.IfStatement ifStatement ->
+                    Math.max(statement.line, Math.max(maxLine(ifStatement.thenBranch), maxLine(ifStatement.elseBranch)));
+            case Statement.WhileStatement whileStatement -> Math.max(statement.line, maxLine(whileStatement.body));
+            case Statement.ForStatement forStatement -> Math.max(statement.line, maxLine(forStatement.body));
+            case Statement.FunctionStatement functionStatement -> {
+                int line = statement.line;
+                for (Statement inner : functionStatement.body) {
+                    line = Math.max(line, maxLine(inner));
+                }
+                yield line;
+            }
+            case null -> 0;
+            default -> statement.line;
+        };
+    }
+}
@@ -0,0 +1,150 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+// Interactive session. One resolver and one interpreter live for the whole session, so variables declared by one
+// input are there for the next, and each input is scanned, parsed and run on its own as soon as it is complete. Input
+// that is not complete yet, with a '{' or '(' still open or a statement without its ';', is continued on the next line.
+// So is an if whose then branch just closed with a '}', when the next line starts with its else.
+// Errors are reported and the session goes on with whatever the failed input changed before it failed.
+public class SpartieRepl {
+    private final SpartieOptimizer spartieOptimizer;
+    private final SpartieResolver spartieResolver = new SpartieResolver();
+    private final SpartieInterpreter spartieInterpreter = new SpartieInterpreter();
+
+    // Line of the session the next input starts on, so errors name the line as the user counts them
+    private int line = 1;
+
+    private enum Completion { INCOMPLETE, COMPLETE, UNLESS_ELSE }
+
+    public SpartieRepl(boolean optimize) {
+        // Later inputs can assign any variable, so no constant may be propagated out of one
+        this.spartieOptimizer = optimize ? new SpartieOptimizer(false) : null;
+    }
+
+    public void run(BufferedReader in, boolean prompt) throws IOException {
+        PrintStream out = System.out;
+        StringBuilder input = new StringBuilder();
+        boolean awaitingElse = false;
+
+        while (true) {
+            if (prompt) {
+                out.print(input.isEmpty() ? "> " : "... ");
+                out.flush();
+            }
+
+            String text = in.readLine();
+            if (text == null) {
+                // End of input runs what is left, if anything
+                if (!input.isEmpty()) {
+                    execute(input.toString());
+                }
+                return;
+            }
+
+            // An if waiting for its else runs on its own once the next line turns out to be something else
+            if (awaitingElse && !startsWithElse(text)) {
+                execute(input.toString());
+                input.setLength(0);
+            }
+
+            // An empty line gives up on completing the input, it runs as it is and reports what is missing
+            boolean forced = text.isBlank() && !input.isEmpty();
+            input.append(text).append('\n');
+            Completion completion = forced ? Completion.COMPLETE : isComplete(input);
+            awaitingElse = completion == Completion.UNLESS_ELSE;
+            if (completion == Completion.COMPLETE) {
+                execute(input.toString());
+                input.setLength(0);
+            }
+        }
+    }
+
+    // Whether the input so far ends a statement with every brace and parenthesis closed, and whether that statement is
+    // an if that an else on the next line would still continue. Input that does not scan is complete, there is no point
+    // waiting for more before reporting the error.
+    private Completion isComplete(CharSequence input) {
+        TokenBuffer tokens;
+        try {
+            tokens = new SpartieScanner(input, 0, input.length(), line).scanBuffer();
+        } catch (SpartieError e) {
+            return Completion.COMPLETE;
+        }
+
+        // The last token is the EOF
+        int count = tokens.size() - 1;
+        if (count == 0) {
+            return Completion.COMPLETE;
+        }
+
+        // Where each open parenthesis is, and for each open brace whether it starts the then branch of an if
+        Deque<Integer> parens = new ArrayDeque<>();
+        Deque<Boolean> braces = new ArrayDeque<>();
+        boolean ifCondition = false;
+        boolean thenBranch = false;
+        int depth = 0;
+        for (int i = 0; i < count; i++) {
+            switch (tokens.type(i)) {
+                case LEFT_PAREN -> {
+                    parens.push(i);
+                    depth++;
+                }
+                case RIGHT_PAREN -> {
+                    int open = parens.isEmpty() ? 0 : parens.pop();
+                    ifCondition = open > 0 && tokens.type(open - 1) == TokenType.IF;
+                    depth--;
+                }
+                case LEFT_BRACE -> {
+                    braces.push(ifCondition && tokens.type(i - 1) == TokenType.RIGHT_PAREN);
+                    depth++;
+                }
+                case RIGHT_BRACE -> {
+                    thenBranch = !braces.isEmpty() && braces.pop();
+                    depth--;
+                }
+                default -> {}
+            }
+        }
+        TokenType last = tokens.type(count - 1);
+        if (depth > 0 || !(last == TokenType.SEMICOLON || last == TokenType.RIGHT_BRACE)) {
+            return Completion.INCOMPLETE;
+        }
+        return last == TokenType.RIGHT_BRACE && thenBranch ? Completion.UNLESS_ELSE : Completion.COMPLETE;
+    }
+
+    // Whether the line goes on with the else of an if. A line that does not scan is left to fail on its own.
+    private boolean startsWithElse(String text) {
+        try {
+            TokenBuffer tokens = new SpartieScanner(text, 0, text.length(), line).scanBuffer();
+            return tokens.size() > 1 && tokens.type(0) == TokenType.ELSE;
+        } catch (SpartieError e) {
+            return false;
+        }
+    }
+
+    private void execute(String input) {
+        int lines = (int) input.chars().filter(c -> c == '\n').count();
+        try {
+            List<Statement> statements = new SpartieParser(new SpartieScanner(input, 0, input.length(), line).scanBuffer()).parse();
+            if (spartieOptimizer != null) {
+                statements = spartieOptimizer.optimize(statements);
+            }
+
+            spartieResolver.resolve(statements);
+            spartieInterpreter.run(statements);
+        } catch (SpartieError e) {
+            SpartieRuntime.output().flush();
+            System.err.println(e.getMessage());
+        } catch (RuntimeException e) {
+            // What would have ended a script ends just this input
+            SpartieRuntime.output().flush();
+            System.err.println(e);
+        } finally {
+            SpartieRuntime.output().flush();
+            line += lines;
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Static pass between the parser and the interpreter. Every variable use is given the number of scopes to walk up
+// (depth) and the index of the variable in that scope (slot), so the interpreter never looks up a variable by name.
+public class SpartieResolver {
+    private static class Scope {
+        private final Map<String, Integer> slots = new HashMap<>();
+        private int slotCount = 0;
+
+        int declare(String name) {
+            // Declaring the same name twice in one scope replaces the old variable, so it can share its slot
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                slot = slotCount++;
+                slots.put(name, slot);
+            }
+            return slot;
+        }
+    }
+
+    // Innermost scope is last. The global scope is kept between calls to resolve.
+    private final List<Scope> scopes = new ArrayList<>();
+
+    // Functions by name. Like the global scope, they are kept between calls to resolve.
+    private final Map<String, Statement.FunctionStatement> functions = new HashMap<>();
+
+    // Index in scopes of the scope of each for loop being resolved, innermost last
+    private final List<Integer> loops = new ArrayList<>();
+
+    public SpartieResolver() {
+        scopes.add(new Scope());
+    }
+
+    public void resolve(List<Statement> statements) {
+        // Every function of the list is known before any body is resolved, so a call can come before the function it
+        // names and two functions can call each other. A name defined twice is bound by later calls to the later one.
+        for (Statement statement : statements) {
+            if (statement instanceof Statement.FunctionStatement function) {
+                functions.putIfAbsent(function.name.text, function);
+            }
+        }
+        for (Statement statement : statements) {
+            resolve(statement);
+        }
+    }
+
+    // Declares a global variable that the program does not declare itself, for values it is started with. Returns the
+    // slot the value goes in.
+    public int declareGlobal(String name) {
+        return scopes.getFirst().declare(name);
+    }
+
+    // Slot of every global variable declared so far, by name
+    public Map<String, Integer> globals() {
+        return Collections.unmodifiableMap(scopes.getFirst().slots);
+    }
+
+    private void resolve(Statement statement) {
+        switch(statement) {
+            case Statement.PrintStatement printStatement -> resolve(printStatement.expression);
+            case Statement.ExpressionStatement expressionStatement -> resolve(expressionStatement.expression);
+            case Statement.VariableStatement variableStatement -> resolveVariableStatement(variableStatement);
+            case Statement.BlockStatement blockStatement -> resolveBlockStatement(blockStatement);
+            case Statement.IfStatement ifStatement -> resolveIfStatement(ifStatement);
+            case Statement.WhileStatement whileStatement -> resolveWhileStatement(whileStatement);
+            case Statement.ForStatement forStatement -> resolveForStatement(forStatement);
+            case Statement.FunctionStatement functionStatement -> resolveFunctionStatement(functionStatement);
+            case Statement.ReturnStatement returnStatement -> resolve(returnStatement.value);
+            case null, default -> {}
+        };
+    }
+
+    private void resolve(Expression expression) {
+        switch (expression) {
+            case Expression.LogicalExpression logicalExpression -> {
+                resolve(logicalExpression.left);
+                resolve(logicalExpression.right);
+            }
+            case Expression.AssignmentExpression assignmentExpression -> resolveAssign(assignmentExpression);
+            case Expression.VariableExpression variableExpression -> resolveVariable(variableExpression);
+            case Expression.ParenthesesExpression parenthesesExpression -> resolve(parenthesesExpression.expression);
+            case Expression.HoistedExpression hoistedExpression -> resolveHoisted(hoistedExpression);
+            case Expression.CallExpression callExpression -> resolveCall(callExpression);
+            case Expression.UnaryExpression unaryExpression -> resolve(unaryExpression.right);
+            case Expression.BinaryExpression binaryExpression -> {
+                resolve(binaryExpression.left);
+                resolve(binaryExpression.right);
+            }
+            case null, default -> {}
+        };
+    }
+
+    // Statement Implementation
+    private void resolveVariableStatement(Statement.VariableStatement statement) {
+        // The initializer is resolved first so that 'var a = a;' refers to an outer 'a'
+        if (statement.initializer != null) {
+            resolve(statement.initializer);
+        }
+        statement.slot = currentScope().declare(statement.name.text);
+    }
+
+    private void resolveBlockStatement(Statement.BlockStatement statement) {
+        // A block without declarations runs in the enclosing scope, so it does not count as a scope here either
+        if (!declaresVariable(statement.statements)) {
+            resolve(statement.statements);
+            return;
+        }
+
+        scopes.add(new Scope());
+        resolve(statement.statements);
+        statement.slotCount = currentScope().slotCount;
+        scopes.removeLast();
+    }
+
+    private void resolveIfStatement(Statement.IfStatement statement) {
+        // A branch cannot declare a variable, so it runs in the enclosing scope
+        resolve(statement.condition);
+        resolve(statement.thenBranch);
+        resolve(statement.elseBranch);
+    }
+
+    private void resolveWhileStatement(Statement.WhileStatement statement) {
+        resolve(statement.condition);
+        resolve(statement.body);
+    }
+
+    private void resolveForStatement(Statement.ForStatement statement) {
+        // Like a block, a loop gets a scope only when it has something to keep there
+        boolean scoped = statement.initializer instanceof Statement.VariableStatement || statement.hoistedCount > 0;
+        if (!scoped) {
+            resolve(statement.initializer);
+            resolve(statement.condition);
+            resolve(statement.body);
+            resolve(statement.increment);
+            return;
+        }
+
+        // The hoisted values take the first slots of the loop's scope
+        Scope scope = new Scope();
+        scope.slotCount = statement.hoistedCount;
+        scopes.add(scope);
+        loops.add(scopes.size() - 1);
+
+        resolve(statement.initializer);
+        resolve(statement.condition);
+        resolve(statement.body);
+        resolve(statement.increment);
+
+        statement.slotCount = scope.slotCount;
+        loops.removeLast();
+        scopes.removeLast();
+    }
+
+    private void resolveFunctionStatement(Statement.FunctionStatement statement) {
+        // From here on calls to the name are calls to this function, even when an earlier one had it
+        functions.put(statement.name.text, statement);
+
+        // Functions are only declared at the top level, so the scope of the body always encloses straight to the
+        // global scope
+        Scope scope = new Scope();
+        for (Token parameter : statement.parameters) {
+            scope.declare(parameter.text);
+        }
+        scopes.add(scope);
+        resolve(statement.body);
+        statement.slotCount = scope.slotCount;
+        scopes.removeLast();
+    }
+
+    // The call is checked here, once, so the interpreter never looks a function up or counts its arguments. A call
+    // that fails the check reports its error when it runs, like the use of an undefined variable.
+    private void resolveCall(Expression.CallExpression expression) {
+        for (Expression argument : expression.arguments) {
+            resolve(argument);
+        }
+
+        Statement.FunctionStatement function = functions.get(expression.name.text);
+        if (function == null) {
+            expression.error = "Undefined function: " + expression.name.text;
+        }
+        else if (function.parameters.size() != expression.arguments.size()) {
+            expression.error = String.format("Expected %d arguments but got %d on line %d", function.parameters.size(),
+                    expression.arguments.size(), expression.name.line);
+        }
+        else {
+            expression.function = function;
+        }
+    }
+
+    private void resolveAssign(Expression.AssignmentExpression expression) {
+        resolve(expression.value);
+
+        expression.depth = depthOf(expression.name.text);
+        if (expression.depth >= 0) {
+            expression.slot = slotOf(expression.name.text, expression.depth);
+        }
+    }
+
+    private void resolveVariable(Expression.VariableExpression expression) {
+        expression.depth = depthOf(expression.name.text);
+        if (expression.depth >= 0) {
+            expression.slot = slotOf(expression.name.text, expression.depth);
+        }
+    }
+
+    private void resolveHoisted(Expression.HoistedExpression expression) {
+        resolve(expression.expression);
+
+        // The optimizer only hoists out of the innermost for loop around an expression
+        expression.depth = scopes.size() - 1 - loops.getLast();
+    }
+
+    // Helper Methods
+
+    // Declarations can only appear directly in a block, anything nested declares into a scope of its own
+    private static boolean declaresVariable(List<Statement> statements) {
+        for (Statement statement : statements) {
+            if (statement instanceof Statement.VariableStatement) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Number of scopes between the innermost scope and the one declaring the name, or -1 if it was never declared
+    private int depthOf(String name) {
+        for (int depth = 0; depth < scopes.size(); depth++) {
+            if (scopes.get(scopes.size() - 1 - depth).slots.containsKey(name)) {
+                return depth;
+            }
+        }
+        return -1;
+    }
+
+    private int slotOf(String name, int depth) {
+        return scopes.get(scopes.size() - 1 - depth).slots.get(name);
+    }
+
+    private Scope currentScope() {
+        return scopes.getLast();
+    }
+}
@@ -0,0 +1,123 @@
+// Semantics of the Spartie operators on boxed values. Every execution engine falls back to these so that they all
+// agree on the result, and on the error, of mixing types.
+public class SpartieRuntime {
+    // Where print statements write. Main installs a buffered sink before the program runs. A thread can have a sink of
+    // its own, which the server uses to send each request's output back to the client that sent it.
+    private static OutputSink output = new OutputSink.Direct(System.out);
+    private static final ThreadLocal<OutputSink> threadOutput = new ThreadLocal<>();
+
+    private SpartieRuntime() {
+    }
+
+    static OutputSink output() {
+        OutputSink sink = threadOutput.get();
+        return sink != null ? sink : output;
+    }
+
+    static void setOutput(OutputSink sink) {
+        output = sink;
+    }
+
+    // Null goes back to the shared sink
+    static void setThreadOutput(OutputSink sink) {
+        if (sink == null) {
+            threadOutput.remove();
+        }
+        else {
+            threadOutput.set(sink);
+        }
+    }
+
+    static Object binary(Token operator, Object left, Object right) {
+        // Handle unique case with add operator that can be applied to Strings and Doubles
+        if (operator.type == TokenType.ADD) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            } else if (left instanceof CharSequence && right instanceof CharSequence) {
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            }
+            else if ((left instanceof CharSequence || right instanceof CharSequence) && (left instanceof Double || right instanceof Double)) {
+                // Only the number is formatted on its own, so a rope on the other side is appended to rather than copied
+                if (left instanceof Double) {
+                    return Rope.concat(String.format("%.2f", (Double)left), (CharSequence)right);
+                }
+                else {
+                    return Rope.concat((CharSequence)left, String.format("%.2f", (Double)right));
+                }
+            }
+        }
+
+        switch(operator.type) {
+            case EQUIVALENT:
+                return isEquivalent(left, right);
+            case NOT_EQUAL:
+                return !isEquivalent(left, right);
+        }
+
+        // If we ge this far, then validate operands
+        validateOperands(operator, left, right);
+
+        switch(operator.type) {
+            case SUBTRACT:
+                return (double)left - (double)right;
+            case MULTIPLY:
+                return (double)left * (double)right;
+            case DIVIDE:
+                return (double)left / (double)right;
+            case GREATER_THAN:
+                return (double)left > (double)right;
+            case GREATER_EQUAL:
+                return (double)left >= (double)right;
+            case LESS_THAN:
+                return (double)left < (double)right;
+            case LESS_EQUAL:
+                return (double)left <= (double)right;
+        }
+
+        return null;
+    }
+
+    static Object negate(Token operator, Object right) {
+        validateOperand(operator, right);
+        return -(double)right;
+    }
+
+    // Test equivalency
+    static boolean isEquivalent(Object left, Object right) {
+        // They are equal under the following conditions:
+        // 1. They are both null
+        // 2. The equals method returns true (String or Double), once a rope has been flattened to a String
+
+        // We have to account a NPE
+        if (left == null && right == null) return true;
+        if (left == null || right == null) return false;
+
+        return Rope.flatten(left).equals(Rope.flatten(right));
+    }
+
+    // False is literal false or null
+    static boolean isTrue(Object object) {
+        if (object == null) return false;
+        if (object instanceof Boolean) return (boolean)object;
+        return true;
+    }
+
+    // Validate the type
+    static void validateOperand(Token operator, Object operand) {
+        if (operand instanceof Double) return;
+        error("Invalid type on line " + operator.line + " : " + operator.text + operand);
+    }
+
+    static void validateOperands(Token operator, Object operand1, Object operand2) {
+        if (operand1 instanceof Double && operand2 instanceof Double) return;
+        error("Invalid type on line " + operator.line + " : " + operand1 + operator.text + operand2);
+    }
+
+    static void undefinedVariable(Token name) {
+        throw new SpartieError("Undefined variable: " + name.text, ErrorCode.INTERPRET_ERROR);
+    }
+
+    static void error(String message) {
+        throw new SpartieError(message, ErrorCode.INVALID_TYPE);
+    }
+}
@@ -1,267 +1,333 @@
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
+// Table driven scanner. The class of the character at the current position, looked up in a precomputed table, decides
+// in one step which kind of token starts there. Whitespace and comments are skipped without creating anything, and
+// keywords are recognized by comparing the identifier in place against the one keyword its first letters allow.
 public class SpartieScanner {
-    private String source;
+    // Character classes
+    private static final byte OTHER = 0;
+    private static final byte SPACE = 1;
+    private static final byte NEWLINE = 2;
+    private static final byte SINGLE = 3;    // ( ) { } , - + * ; & |
+    private static final byte OPERATOR = 4;  // ! = < > with or without a following =
+    private static final byte SLASH = 5;     // divide or comment
+    private static final byte QUOTE = 6;
+    private static final byte DIGIT = 7;
+    private static final byte ALPHA = 8;
+
+    // Indexed by character, characters outside ASCII are OTHER
+    private static final byte[] classes = new byte[128];
+
+    // Token type of SINGLE and OPERATOR characters, and of OPERATOR characters followed by '='
+    private static final TokenType[] types = new TokenType[128];
+    private static final TokenType[] equalTypes = new TokenType[128];
+
+    // Text of every token type that is always spelled the same way, indexed by ordinal. Shared, so only identifiers,
+    // numbers and strings need their text copied out of the source.
+    private static final String[] fixedTexts = new String[TokenType.values().length];
+    private static final boolean[] isKeyword = new boolean[TokenType.values().length];
+
+    private static final String[] keywords = {
+            "else", "false", "for", "fun", "if", "null", "print", "return", "true", "var", "while"
+    };
+    private static final TokenType[] keywordTypes = {
+            TokenType.ELSE, TokenType.FALSE, TokenType.FOR, TokenType.FUN, TokenType.IF, TokenType.NULL,
+            TokenType.PRINT, TokenType.RETURN, TokenType.TRUE, TokenType.VAR, TokenType.WHILE
+    };
 
-    private int start = 0;
-    private int current = 0;
-    private int line = 1;
-
-    private static final Map<String, TokenType> keywords = new HashMap<>();
     static {
-        keywords.put("if", TokenType.IF);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("while", TokenType.WHILE);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("var", TokenType.VAR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("null", TokenType.NULL);
+        classes[' '] = SPACE;
+        classes['\t'] = SPACE;
+        classes['\r'] = SPACE;
+        classes['\n'] = NEWLINE;
+        classes['/'] = SLASH;
+        classes['"'] = QUOTE;
+        for (char c = '0'; c <= '9'; c++) classes[c] = DIGIT;
+        for (char c = 'a'; c <= 'z'; c++) classes[c] = ALPHA;
+        for (char c = 'A'; c <= 'Z'; c++) classes[c] = ALPHA;
+
+        single('(', TokenType.LEFT_PAREN);
+        single(')', TokenType.RIGHT_PAREN);
+        single('{', TokenType.LEFT_BRACE);
+        single('}', TokenType.RIGHT_BRACE);
+        single(',', TokenType.COMMA);
+        single('-', TokenType.SUBTRACT);
+        single('+', TokenType.ADD);
+        single('*', TokenType.MULTIPLY);
+        single(';', TokenType.SEMICOLON);
+        single('&', TokenType.AND);
+        single('|', TokenType.OR);
+
+        operator('!', TokenType.NOT, TokenType.NOT_EQUAL);
+        operator('=', TokenType.ASSIGN, TokenType.EQUIVALENT);
+        operator('<', TokenType.LESS_THAN, TokenType.LESS_EQUAL);
+        operator('>', TokenType.GREATER_THAN, TokenType.GREATER_EQUAL);
+
+        fixedTexts[TokenType.DIVIDE.ordinal()] = "/";
+        for (int i = 0; i < keywords.length; i++) {
+            fixedTexts[keywordTypes[i].ordinal()] = keywords[i];
+            isKeyword[keywordTypes[i].ordinal()] = true;
+        }
+    }
+
+    private static void single(char c, TokenType type) {
+        classes[c] = SINGLE;
+        types[c] = type;
+        fixedTexts[type.ordinal()] = String.valueOf(c);
+    }
+
+    private static void operator(char c, TokenType type, TokenType withEqual) {
+        classes[c] = OPERATOR;
+        types[c] = type;
+        equalTypes[c] = withEqual;
+        fixedTexts[type.ordinal()] = String.valueOf(c);
+        fixedTexts[withEqual.ordinal()] = c + "=";
+    }
+
+    // Either the whole program as a String or a MappedSource, read front to back. Only the characters before length
+    // are scanned.
+    private final CharSequence source;
+    private final int length;
+
+    private int current;
+    private int line;
+
+    // Range in the source of the text of the token scanToken found last. For a string it is the text between the quotes.
+    private int tokenStart = 0;
+    private int tokenEnd = 0;
+
+    public SpartieScanner(CharSequence source) {
+        this(source, 0, source.length(), 1);
     }
 
-    public SpartieScanner(String source) {
+    // Scans just the characters from start to end, the first of them being on the given line. Token positions are
+    // still offsets into the whole source.
+    public SpartieScanner(CharSequence source, int start, int end, int line) {
         this.source = source;
+        this.current = start;
+        this.length = end;
+        this.line = line;
     }
 
     public List<Token> scan() {
         List<Token> tokens = new ArrayList<>();
 
-        Token token = null;
-        while (!isAtEnd() && (token = getNextToken()) != null) {
-            if (token.type != TokenType.IGNORE) tokens.add(token);
-        }
-        tokens.add(new Token(TokenType.EOF, null, line));
+        Token token;
+        do {
+            token = next();
+            tokens.add(token);
+        } while (token.type != TokenType.EOF);
 
         return tokens;
     }
 
-    private Token getNextToken() {
-        Token token = null;
-
-        // Try to get each type of token, starting with single
-        token = getSingleCharacterToken();
-        if (token == null) token = getComparisonToken();
-        if (token == null) token = getDivideOrComment();
-        if (token == null) token = getStringToken();
-        if (token == null) token = getNumericToken();
-        if (token == null) token = getIdentifierOrReservedWord();
-        if (token == null) {
-            error(line, String.format("Unexpected character '%c' at %d", source.charAt(current), current));
-        }
+    // Every token of the program at once in compact form, nothing is created per token
+    public TokenBuffer scanBuffer() {
+        TokenBuffer buffer = new TokenBuffer(source, length - current);
+
+        TokenType type;
+        do {
+            type = scanToken();
+            buffer.add(type, tokenStart, tokenEnd - tokenStart, line);
+        } while (type != TokenType.EOF);
+
+        return buffer;
+    }
 
-        return token;
+    // Scans just the next token, for a parser that pulls tokens as it needs them. Returns EOF once the source is used
+    // up.
+    public Token next() {
+        TokenType type = scanToken();
+        return token(source, type, tokenStart, tokenEnd, line);
     }
 
-    private Token getDivideOrComment() {
-        // Hint: Examine the character for a comparison but check the next character (as long as one is available)
-        // For example: <
-        char nextCharacter = source.charAt(current);
+    // The Token for a token found in the source
+    static Token token(CharSequence source, TokenType type, int start, int end, int line) {
+        String text = fixedTexts[type.ordinal()];
+        if (text != null) {
+            // Keywords carry their text as the literal too, like identifiers
+            return isKeyword[type.ordinal()] ? new Token(type, text, line, text) : new Token(type, text, line);
+        }
 
-        if (nextCharacter == '/') {
-            if (examine('/')) {
-                while(!isAtEnd() && source.charAt(current) != '\n') {
-                    current++;
-                }
-                return new Token(TokenType.IGNORE, "", line);
+        return switch (type) {
+            case EOF -> new Token(TokenType.EOF, null, line);
+            case NUMBER -> {
+                String numberString = source.subSequence(start, end).toString();
+                yield new Token(TokenType.NUMBER, numberString, line, Double.parseDouble(numberString));
             }
-            else {
-                current++;
-                return new Token(TokenType.DIVIDE, String.valueOf(nextCharacter), line);
+            default -> {
+                // Identifiers and strings are their own literal
+                String string = source.subSequence(start, end).toString();
+                yield new Token(type, string, line, string);
             }
-        }
-        return null;
+        };
     }
 
-    private Token getIdentifierOrReservedWord() {
-        char nextCharacter = source.charAt(current);
-        if (isAlpha(nextCharacter)) {
-            start = current;
-            while (isAlpha(nextCharacter)) {
-                current++;
-                if (isAtEnd()) break;
+    // Scans the next token and returns its type, leaving the range of its text in tokenStart and tokenEnd
+    private TokenType scanToken() {
+        while (current < length) {
+            char c = source.charAt(current);
 
-                nextCharacter = source.charAt(current);
+            switch (c < 128 ? classes[c] : OTHER) {
+                case SPACE -> current++;
+                case NEWLINE -> {
+                    current++;
+                    line++;
+                }
+                case SINGLE -> {
+                    tokenStart = current++;
+                    tokenEnd = current;
+                    return types[c];
+                }
+                case OPERATOR -> {
+                    tokenStart = current;
+                    if (peekNext() == '=') {
+                        current += 2;
+                        tokenEnd = current;
+                        return equalTypes[c];
+                    }
+                    tokenEnd = ++current;
+                    return types[c];
+                }
+                case SLASH -> {
+                    if (peekNext() != '/') {
+                        tokenStart = current++;
+                        tokenEnd = current;
+                        return TokenType.DIVIDE;
+                    }
+                    // A comment runs to the end of the line, the newline itself is scanned as usual
+                    while (current < length && source.charAt(current) != '\n') {
+                        current++;
+                    }
+                }
+                case QUOTE -> {
+                    return string();
+                }
+                case DIGIT -> {
+                    return number();
+                }
+                case ALPHA -> {
+                    return identifierOrKeyword();
+                }
+                default -> {
+                    error(line, String.format("Unexpected character '%c' at %d", c, current));
+                    return null;
+                }
             }
-            String identifierOrKeyword = source.substring(start, current);
+        }
 
-            // It is a keyword
-            if (keywords.containsKey(identifierOrKeyword)) {
-                return new Token(keywords.get(identifierOrKeyword), identifierOrKeyword, line, identifierOrKeyword);
+        tokenStart = tokenEnd = length;
+        return TokenType.EOF;
+    }
+
+    private TokenType string() {
+        int end = current + 1;
+        while (end < length) {
+            char c = source.charAt(end);
+            if (c == '"') {
+                tokenStart = current + 1;
+                tokenEnd = end;
+                current = end + 1;
+                return TokenType.STRING;
             }
-            else {
-                return new Token(TokenType.IDENTIFIER, identifierOrKeyword, line, identifierOrKeyword);
+            if (c == '\n') {
+                break;
             }
+            end++;
         }
+
+        // We hit EOL or the end of the source, report error
+        current = end;
+        error(line, "String did not terminate before new line.");
         return null;
     }
 
-    private Token getNumericToken() {
-        char nextCharacter = source.charAt(current);
-        if (isDigit(nextCharacter)) {
-            start = current;
-            boolean periodMatched = false;
-            while (isDigit(nextCharacter) || nextCharacter == '.') {
-                if (nextCharacter == '.' && periodMatched) {
+    private TokenType number() {
+        tokenStart = current;
+        boolean periodMatched = false;
+        while (current < length) {
+            char c = source.charAt(current);
+            if (c == '.') {
+                if (periodMatched) {
                     // We have two periods
                     error(line, "Invalid number with two periods");
                     return null;
                 }
-                else if (nextCharacter == '.') {
-                    periodMatched = true;
-                }
-
-                current++;
-                if (isAtEnd()) break;
-
-                nextCharacter = source.charAt(current);
+                periodMatched = true;
             }
-            String numberString = source.substring(start, current);
-            Double numberValue = Double.parseDouble(numberString);
-
-            return new Token(TokenType.NUMBER, numberString, line, numberValue);
-
+            else if (c < '0' || c > '9') {
+                break;
+            }
+            current++;
         }
-        return null;
-    }
-
-    private Token getStringToken() {
-        char nextCharacter = source.charAt(current);
-
-        String string = null;
-
-        if (nextCharacter == '"') {
-            int temp_current = current;
+        tokenEnd = current;
 
-            while (!isAtEnd()) {
-                temp_current++;
-                if (temp_current >= source.length() || source.charAt(temp_current) == '\n') {
-                    // We hit EOL, report error
-                    current = temp_current;
-                    error(line, "String did not terminate before new line.");
-                    return null;
-                }
-                if (source.charAt(temp_current) == '"') {
-                    // We have our string
-                    string = source.substring(current + 1, temp_current);
+        return TokenType.NUMBER;
+    }
 
-                    // Update our current
-                    current = temp_current + 1;
-                    return new Token(TokenType.STRING, string, line, string);
-                }
+    private TokenType identifierOrKeyword() {
+        tokenStart = current;
+        while (current < length) {
+            char c = source.charAt(current);
+            if (c >= 128 || classes[c] != ALPHA) {
+                break;
             }
-
-            error(line, "String did not terminate.");
+            current++;
         }
-        return null;
-    }
-
-    private Token getComparisonToken() {
-        // Hint: Examine the character for a comparison but check the next character (as long as one is available)
-        // For example: <
-        char nextCharacter = source.charAt(current);
+        tokenEnd = current;
 
-        TokenType type = TokenType.UNDEFINED;
-
-        switch (nextCharacter) {
-            // Comparison
-            case '!': type = (examine('=') ? TokenType.NOT_EQUAL : TokenType.NOT); break;
-            case '=': type = (examine('=') ? TokenType.EQUIVALENT : TokenType.ASSIGN); break;
-            case '<': type = (examine('=') ? TokenType.LESS_EQUAL : TokenType.LESS_THAN); break;
-            case '>': type = (examine('=') ? TokenType.GREATER_EQUAL : TokenType.GREATER_THAN); break;
-        }
+        int keyword = keyword(tokenStart, tokenEnd - tokenStart);
+        return keyword >= 0 ? keywordTypes[keyword] : TokenType.IDENTIFIER;
+    }
 
-        if (type != TokenType.UNDEFINED) {
-            // Check for two character token
-            if (type == TokenType.NOT_EQUAL || type == TokenType.EQUIVALENT || type == TokenType.LESS_EQUAL || type == TokenType.GREATER_EQUAL) {
-                current+=2;
-                return new Token(type, source.substring(current - 2, current), line);
+    // A trie over the first one or two letters picks the only keyword the identifier could be, which is then compared
+    // in place. Returns the index into keywords, or -1 for an identifier.
+    private int keyword(int start, int length) {
+        return switch (source.charAt(start)) {
+            case 'e' -> matches(start, length, 0);
+            case 'f' -> {
+                if (length < 2) yield -1;
+                yield switch (source.charAt(start + 1)) {
+                    case 'a' -> matches(start, length, 1);
+                    case 'o' -> matches(start, length, 2);
+                    case 'u' -> matches(start, length, 3);
+                    default -> -1;
+                };
             }
-            else {
-                // Otherwise, we had one character token
-                current++;
-                return new Token(type, String.valueOf(nextCharacter), line);
-            }
-        }
-        else {
-            return null;
-        }
+            case 'i' -> matches(start, length, 4);
+            case 'n' -> matches(start, length, 5);
+            case 'p' -> matches(start, length, 6);
+            case 'r' -> matches(start, length, 7);
+            case 't' -> matches(start, length, 8);
+            case 'v' -> matches(start, length, 9);
+            case 'w' -> matches(start, length, 10);
+            default -> -1;
+        };
     }
 
-    private Token getSingleCharacterToken() {
-        // Hint: Examine the character, if you can get a token, return it, otherwise return null
-        // Hint: Be careful with the divide, we have ot know if it is a single character
-
-        char nextCharacter = source.charAt(current);
-
-        TokenType type = TokenType.UNDEFINED;
-
-        // Start with tokens that are single characters
-        switch (nextCharacter) {
-            case '(': type = TokenType.LEFT_PAREN; break;
-            case ')': type = TokenType.RIGHT_PAREN; break;
-            case '{': type = TokenType.LEFT_BRACE; break;
-            case '}': type = TokenType.RIGHT_BRACE; break;
-            case ',': type = TokenType.COMMA; break;
-            case '-': type = TokenType.SUBTRACT; break;
-            case '+': type = TokenType.ADD; break;
-            case '*': type = TokenType.MULTIPLY; break;
-            case ';': type = TokenType.SEMICOLON; break;
-            case '&': type = TokenType.AND; break;
-            case '|': type = TokenType.OR; break;
-            case '\n':
-                type = TokenType.IGNORE;
-                line++;
-                break;
-            case ' ', '\t', '\r':
-                type = TokenType.IGNORE;
-                break;
-            default:
-                break;
+    private int matches(int start, int length, int keyword) {
+        String text = keywords[keyword];
+        if (text.length() != length) {
+            return -1;
         }
-
-        if (type != TokenType.UNDEFINED) {
-            // We have a valid token, advanced and return token
-            current++;
-            return new Token(type, String.valueOf(nextCharacter), line);
-        }
-        else {
-            return null;
+        for (int i = 1; i < length; i++) {
+            if (source.charAt(start + i) != text.charAt(i)) {
+                return -1;
+            }
         }
+        return keyword;
     }
 
     // Helper Methods
-    private boolean isDigit(char character) {
-        return character >= '0' && character <= '9';
-    }
-
-    private boolean isAlpha(char character) {
-        return character >= 'a' && character <= 'z' ||
-                character >= 'A' && character <= 'Z';
-    }
-
-    // This will check if a character is what you expect, if so, it will advance
-    // Useful for checking <= or //
-    private boolean examine(char expected) {
-        if (isAtEnd()) return false;
-        if (source.charAt(current + 1) != expected) return false;
-
-        // Otherwise, it matches it, so advance
-        return true;
-    }
 
-    private boolean isAtEnd() {
-        return current >= source.length();
+    // The character after the current one, or 0 past the end of the source
+    private char peekNext() {
+        return current + 1 < length ? source.charAt(current + 1) : '\0';
     }
 
     // Error handling
     private void error(int line, String message) {
-        System.err.printf("Error occurred on line %d : %s\n", line, message);
-        System.exit(ErrorCode.INTERPRET_ERROR);
+        throw new SpartieError(String.format("Error occurred on line %d : %s", line, message), ErrorCode.INTERPRET_ERROR);
     }
 }
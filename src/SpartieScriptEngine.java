@@ -0,0 +1,287 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+// Runs Spartie inside another Java program through javax.script. A script is scanned, parsed and optimized once when
+// it is compiled and can then be evaluated any number of times. The bindings of the context are the script's starting
+// globals, and after it runs every global it has, its own top level variables included, is written back to the
+// engine scope. Its own variables are resolved as Main resolves them, from their declaration on, so code before a
+// declaration does not see it. Print statements write to the context's writer. An error of the script is a
+// ScriptException whose cause is the SpartieError, which holds the exit code Main would have ended with.
+//
+// The tree interpreter is always used. A compiled script can be evaluated on any number of threads at once, each run
+// with an interpreter and globals of its own, as long as each passes bindings of its own or bindings that are thread
+// safe. Setting SHARED_GLOBALS to true in the context makes the runs of a compiled script share one set of globals
+// instead, see SharedGlobals. The bindings of the first such run decide which globals there are and what they start
+// as, every later one starts with whatever the runs before it left.
+//
+// The script runs on the thread that evaluates it, so how deep its calls can go depends on that thread's stack as well
+// as on the limit of SpartieInterpreter. A thread from SpartieInterpreter.threads has room for the limit.
+public class SpartieScriptEngine extends AbstractScriptEngine implements Compilable {
+    // Attribute of the context that selects shared globals
+    public static final String SHARED_GLOBALS = "spartie.sharedGlobals";
+
+    private final ScriptEngineFactory factory;
+
+    SpartieScriptEngine(ScriptEngineFactory factory) {
+        this.factory = factory;
+    }
+
+    @Override
+    public Object eval(String script, ScriptContext context) throws ScriptException {
+        return compile(script).eval(context);
+    }
+
+    @Override
+    public Object eval(Reader reader, ScriptContext context) throws ScriptException {
+        return compile(reader).eval(context);
+    }
+
+    @Override
+    public Bindings createBindings() {
+        return new SimpleBindings();
+    }
+
+    @Override
+    public ScriptEngineFactory getFactory() {
+        return factory;
+    }
+
+    @Override
+    public CompiledScript compile(String script) throws ScriptException {
+        try {
+            List<Statement> statements =
+                    new SpartieOptimizer().optimize(new SpartieParser(new SpartieScanner(script).scanBuffer()).parse());
+            return new Script(this, ScriptCache.encode(statements));
+        } catch (SpartieError | IOException e) {
+            throw scriptException(e);
+        }
+    }
+
+    @Override
+    public CompiledScript compile(Reader reader) throws ScriptException {
+        StringBuilder script = new StringBuilder();
+        char[] buffer = new char[8192];
+        try {
+            for (int read = reader.read(buffer); read != -1; read = reader.read(buffer)) {
+                script.append(buffer, 0, read);
+            }
+        } catch (IOException e) {
+            throw scriptException(e);
+        }
+        return compile(script.toString());
+    }
+
+    private static ScriptException scriptException(Exception cause) {
+        ScriptException exception =
+                new ScriptException(cause instanceof SpartieError ? cause.getMessage() : cause.toString());
+        exception.initCause(cause);
+        return exception;
+    }
+
+    // A parsed script, kept in the compact form of the ScriptCache. Slots of globals depend on the names the bindings
+    // hold, so the script is decoded and resolved once for each set of names it is run with, and every run with those
+    // names then shares that tree. Runs with shared globals all share one tree and
+    // one store, made by the first of them.
+    static final class Script extends CompiledScript {
+        // Sets of names beyond this many are resolved for the one run and not kept
+        private static final int MAX_RESOLVED = 16;
+
+        private final SpartieScriptEngine engine;
+        private final byte[] tree;
+
+        private final Map<List<String>, Resolved> resolved = new ConcurrentHashMap<>();
+
+        // Guarded by this
+        private Resolved shared;
+
+        private Script(SpartieScriptEngine engine, byte[] tree) {
+            this.engine = engine;
+            this.tree = tree;
+        }
+
+        @Override
+        public ScriptEngine getEngine() {
+            return engine;
+        }
+
+        // Returns null, a script has no value of its own
+        @Override
+        public Object eval(ScriptContext context) throws ScriptException {
+            Bindings bindings = context.getBindings(ScriptContext.ENGINE_SCOPE);
+            Bindings shared = context.getBindings(ScriptContext.GLOBAL_SCOPE);
+
+            // The names the script starts with, in a fixed order so the same names get the same slots every time
+            TreeSet<String> sorted = new TreeSet<>();
+            for (Bindings scope : new Bindings[] { shared, bindings }) {
+                if (scope != null) {
+                    for (String name : scope.keySet()) {
+                        if (isIdentifier(name)) {
+                            sorted.add(name);
+                        }
+                    }
+                }
+            }
+            List<String> names = List.copyOf(sorted);
+            Object[] values = new Object[names.size()];
+            for (int i = 0; i < values.length; i++) {
+                String name = names.get(i);
+                Object value = bindings != null && bindings.containsKey(name) ? bindings.get(name) : shared.get(name);
+                values[i] = toSpartie(name, value);
+            }
+
+            boolean sharedGlobals = Boolean.TRUE.equals(context.getAttribute(SHARED_GLOBALS));
+            Resolved script = sharedGlobals ? shared(names, values) : resolved.get(names);
+            if (script == null) {
+                script = resolved.size() < MAX_RESOLVED
+                        ? resolved.computeIfAbsent(names, this::resolve) : resolve(names);
+            }
+            Map<String, Integer> globals = script.globals;
+
+            WriterOutputSink output = new WriterOutputSink(context.getWriter());
+            SpartieRuntime.setThreadOutput(output);
+            try {
+                Environment environment;
+                if (sharedGlobals) {
+                    environment = script.sharedGlobals;
+                }
+                else {
+                    environment = new Environment();
+                    for (int i = 0; i < values.length; i++) {
+                        environment.define(globals.get(names.get(i)), values[i]);
+                    }
+                }
+
+                SpartieInterpreter spartieInterpreter = new SpartieInterpreter(null, environment);
+                try {
+                    spartieInterpreter.run(script.statements);
+                } finally {
+                    // What ran before an error is kept, as it is when Main runs the script
+                    if (bindings != null) {
+                        for (Map.Entry<String, Integer> global : globals.entrySet()) {
+                            bindings.put(global.getKey(), Rope.flatten(spartieInterpreter.global(global.getValue())));
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                throw scriptException(e);
+            } finally {
+                SpartieRuntime.setThreadOutput(null);
+                output.flush();
+            }
+            return null;
+        }
+
+        private Resolved resolve(List<String> names) {
+            List<Statement> statements = ScriptCache.decode(ByteBuffer.wrap(tree));
+            SpartieResolver spartieResolver = new SpartieResolver();
+            for (String name : names) {
+                spartieResolver.declareGlobal(name);
+            }
+            spartieResolver.resolve(statements);
+            return new Resolved(statements, Map.copyOf(spartieResolver.globals()), null);
+        }
+
+        // The tree and store every run with shared globals uses, starting with the values of the first run's bindings
+        private synchronized Resolved shared(List<String> names, Object[] values) {
+            if (shared == null) {
+                Resolved script = resolve(names);
+                SharedGlobals sharedGlobals = new SharedGlobals(script.globals.size());
+                for (int i = 0; i < values.length; i++) {
+                    sharedGlobals.define(script.globals.get(names.get(i)), values[i]);
+                }
+                shared = new Resolved(script.statements, script.globals, sharedGlobals);
+            }
+            return shared;
+        }
+
+        // A value of the host as one of the types Spartie has: numbers are doubles and text is a String
+        private static Object toSpartie(String name, Object value) throws ScriptException {
+            return switch (value) {
+                case null -> null;
+                case Double number -> number;
+                case Number number -> number.doubleValue();
+                case Boolean bool -> bool;
+                case CharSequence text -> text.toString();
+                case Character character -> character.toString();
+                default ->
+                        throw new ScriptException("Unsupported type for " + name + ": " + value.getClass().getName());
+            };
+        }
+
+        // Bindings also hold entries such as javax.script.filename that no script could name. A name is made of ASCII
+        // letters only, as SpartieScanner reads them.
+        private static boolean isIdentifier(String name) {
+            if (name.isEmpty()) {
+                return false;
+            }
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    // The tree of a script resolved for one set of names, with the slot of every global, and the store of the runs
+    // that share their globals. None of them changes once it is made, which is before it is put where other threads can
+    // find it.
+    private static final class Resolved {
+        final List<Statement> statements;
+        final Map<String, Integer> globals;
+
+        // Null unless the runs share their globals
+        final SharedGlobals sharedGlobals;
+
+        Resolved(List<Statement> statements, Map<String, Integer> globals, SharedGlobals sharedGlobals) {
+            this.statements = statements;
+            this.globals = globals;
+            this.sharedGlobals = sharedGlobals;
+        }
+    }
+
+    // Writes every line to the writer of the context the script is evaluated in
+    private static final class WriterOutputSink implements OutputSink {
+        private final Writer writer;
+
+        WriterOutputSink(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void println(String line) {
+            try {
+                writer.write(line);
+                writer.write(System.lineSeparator());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void flush() {
+            try {
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+import java.util.List;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+
+// Lets javax.script.ScriptEngineManager find the Spartie engine by name, extension or MIME type
+public class SpartieScriptEngineFactory implements ScriptEngineFactory {
+    private static final String VERSION = "1.0";
+
+    @Override
+    public String getEngineName() {
+        return "Spartie";
+    }
+
+    @Override
+    public String getEngineVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public List<String> getExtensions() {
+        return List.of("sprty");
+    }
+
+    @Override
+    public List<String> getMimeTypes() {
+        return List.of("application/x-spartie");
+    }
+
+    @Override
+    public List<String> getNames() {
+        return List.of("spartie", "Spartie");
+    }
+
+    @Override
+    public String getLanguageName() {
+        return "Spartie";
+    }
+
+    @Override
+    public String getLanguageVersion() {
+        return VERSION;
+    }
+
+    @Override
+    public Object getParameter(String key) {
+        return switch (key) {
+            case ScriptEngine.ENGINE -> getEngineName();
+            case ScriptEngine.ENGINE_VERSION -> getEngineVersion();
+            case ScriptEngine.NAME -> getNames().getFirst();
+            case ScriptEngine.LANGUAGE -> getLanguageName();
+            case ScriptEngine.LANGUAGE_VERSION -> getLanguageVersion();
+            // Runs on different threads share only the compiled tree, and the globals when asked to
+            case "THREADING" -> "MULTITHREADED";
+            default -> null;
+        };
+    }
+
+    // Spartie has no objects, the nearest thing to a method is a function
+    @Override
+    public String getMethodCallSyntax(String object, String method, String... arguments) {
+        return method + "(" + String.join(", ", arguments) + ")";
+    }
+
+    @Override
+    public String getOutputStatement(String toDisplay) {
+        return "print \"" + toDisplay + "\";";
+    }
+
+    @Override
+    public String getProgram(String... statements) {
+        StringBuilder program = new StringBuilder();
+        for (String statement : statements) {
+            program.append(statement);
+            if (!statement.endsWith(";") && !statement.endsWith("}")) {
+                program.append(';');
+            }
+            program.append('\n');
+        }
+        return program.toString();
+    }
+
+    @Override
+    public ScriptEngine getScriptEngine() {
+        return new SpartieScriptEngine(this);
+    }
+}
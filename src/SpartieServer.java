@@ -0,0 +1,215 @@
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// A long lived JVM that runs scripts sent to it over a Unix domain socket, so a short script pays for neither JVM
+// startup nor a cold JIT. Each connection carries one request and runs on its own thread with a fresh interpreter and
+// global environment. Requests for the same script run the same resolved tree, which none of them resolves again, so
+// they share nothing they can change but the cache of BinaryExpression.node. The threads are platform threads with
+// the stack of SpartieInterpreter.threads, a virtual thread could not go as many calls deep.
+//
+// A request is the number of arguments followed by each argument, as written by DataOutputStream. The reply is a
+// series of frames, each a kind byte: STDOUT and STDERR are followed by a length and that many bytes of UTF-8 text,
+// EXIT by the exit code, and EXIT is the last frame.
+public class SpartieServer {
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+
+    private static final String USAGE = "Usage: spartie-client socket [--engine=ast|vm|jvm] [--no-opt] file";
+
+    // A parsed and resolved script, run as it is by every request for it
+    private static final class ParsedScript {
+        final FileTime modified;
+        final long size;
+        final List<Statement> statements;
+
+        ParsedScript(FileTime modified, long size, List<Statement> statements) {
+            this.modified = modified;
+            this.size = size;
+            this.statements = statements;
+        }
+    }
+
+    private final Path socket;
+
+    // Keyed by the optimize flag and the absolute path. A script is parsed again when its modification time or its
+    // size changes.
+    private final Map<String, ParsedScript> scripts = new ConcurrentHashMap<>();
+
+    public SpartieServer(Path socket) {
+        this.socket = socket;
+    }
+
+    public void serve() throws IOException {
+        // A socket file left behind by a server that did not shut down cleanly would make bind fail
+        Files.deleteIfExists(socket);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService requests = Executors.newThreadPerTaskExecutor(
+                     SpartieInterpreter.threads().name("spartie-request-", 0).factory())) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(socket);
+                } catch (IOException e) {
+                    // Nothing left to do about it on the way out
+                }
+            }));
+            System.err.printf("Listening on %s\n", socket);
+
+            while (true) {
+                SocketChannel client = server.accept();
+                requests.submit(() -> handle(client));
+            }
+        }
+    }
+
+    private void handle(SocketChannel client) {
+        try (client) {
+            DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+            String[] args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+
+            DataOutputStream frames = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(client)));
+            BufferedOutputSink output = new BufferedOutputSink(new FrameStream(frames, STDOUT), StandardCharsets.UTF_8);
+            PrintStream error = new PrintStream(new FrameStream(frames, STDERR), true, StandardCharsets.UTF_8);
+
+            int exitCode;
+            SpartieRuntime.setThreadOutput(output);
+            try {
+                exitCode = execute(args, error);
+            } catch (SpartieError e) {
+                // What the program printed before the error comes out before the error does
+                output.flush();
+                error.println(e.getMessage());
+                exitCode = e.exitCode;
+            } catch (RuntimeException e) {
+                // What would have been an uncaught exception ends the request instead of the server
+                output.flush();
+                error.println(e);
+                exitCode = 1;
+            } finally {
+                SpartieRuntime.setThreadOutput(null);
+            }
+
+            output.flush();
+            frames.writeByte(EXIT);
+            frames.writeInt(exitCode);
+            frames.flush();
+        } catch (IOException | RuntimeException e) {
+            // The client went away, there is no one left to tell
+        }
+    }
+
+    // Runs one request the way Main runs a script and returns the exit code
+    private int execute(String[] args, PrintStream error) throws IOException {
+        String engine = "ast";
+        boolean optimize = true;
+        String filename = null;
+
+        for (String arg : args) {
+            if (arg.startsWith("--engine=")) {
+                engine = arg.substring("--engine=".length());
+            }
+            else if (arg.equals("--no-opt")) {
+                optimize = false;
+            }
+            else if (filename == null && !arg.startsWith("--")) {
+                filename = arg;
+            }
+            else {
+                filename = null;
+                break;
+            }
+        }
+
+        if (filename == null || !(engine.equals("ast") || engine.equals("vm") || engine.equals("jvm"))) {
+            error.println(USAGE);
+            return ErrorCode.INCORRECT_USAGE;
+        }
+
+        Path path = Path.of(filename);
+        if (!Files.isRegularFile(path)) {
+            error.printf("File %s not found\n", filename);
+            return ErrorCode.FILE_NOT_FOUND;
+        }
+        Main.execute(statements(path, optimize), engine, true);
+        return 0;
+    }
+
+    // The resolved tree of the script, parsed only if the script changed since it was last parsed. It is published to
+    // other requests through the map once it is resolved, and never written to after that.
+    private List<Statement> statements(Path path, boolean optimize) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String key = (optimize ? "opt " : "no-opt ") + path.toAbsolutePath();
+
+        ParsedScript cached = scripts.get(key);
+        if (cached != null && cached.modified.equals(attributes.lastModifiedTime()) && cached.size == attributes.size()) {
+            return cached.statements;
+        }
+
+        String sourceCode = new String(Files.readAllBytes(path), Charset.defaultCharset());
+        List<Statement> statements = new SpartieParser(new SpartieScanner(sourceCode).scanBuffer()).parse();
+        if (optimize) {
+            statements = new SpartieOptimizer().optimize(statements);
+        }
+
+        Main.resolve(statements);
+
+        scripts.put(key, new ParsedScript(attributes.lastModifiedTime(), attributes.size(), statements));
+        return statements;
+    }
+
+    // Sends every write as one frame of the given kind
+    private static final class FrameStream extends OutputStream {
+        private final DataOutputStream frames;
+        private final byte kind;
+
+        FrameStream(DataOutputStream frames, byte kind) {
+            this.frames = frames;
+            this.kind = kind;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return;
+            }
+            frames.writeByte(kind);
+            frames.writeInt(length);
+            frames.write(bytes, offset, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            frames.flush();
+        }
+    }
+}
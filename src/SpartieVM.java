@@ -0,0 +1,324 @@
+// Stack machine that runs a Chunk from the SpartieCompiler. Numbers are kept unboxed in a double array next to the
+// value stack and the locals, a slot holding the NUMBER marker has its value in the double array.
+public class SpartieVM {
+    private static final Object NUMBER = new Object();
+
+    public void run(Chunk chunk) {
+        final int[] code = chunk.code;
+        final Object[] constants = chunk.constants;
+        final double[] numberConstants = chunk.numbers;
+
+        final Object[] stack = new Object[chunk.maxStack];
+        final double[] numbers = new double[chunk.maxStack];
+        final Object[] locals = new Object[chunk.localCount];
+        final double[] localNumbers = new double[chunk.localCount];
+        final OutputSink output = SpartieRuntime.output();
+
+        int sp = 0;
+        int ip = 0;
+
+        while (true) {
+            switch (code[ip++]) {
+                case OpCode.NUMBER -> {
+                    stack[sp] = NUMBER;
+                    numbers[sp++] = numberConstants[code[ip++]];
+                }
+                case OpCode.CONSTANT -> stack[sp++] = constants[code[ip++]];
+                case OpCode.NULL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = Boolean.TRUE;
+                case OpCode.FALSE -> stack[sp++] = Boolean.FALSE;
+                case OpCode.POP -> sp--;
+
+                case OpCode.GET_LOCAL -> {
+                    int slot = code[ip++];
+                    stack[sp] = locals[slot];
+                    numbers[sp++] = localNumbers[slot];
+                }
+                case OpCode.SET_LOCAL -> {
+                    int slot = code[ip++];
+                    locals[slot] = stack[sp - 1];
+                    localNumbers[slot] = numbers[sp - 1];
+                }
+                case OpCode.STORE_LOCAL -> {
+                    int slot = code[ip++];
+                    locals[slot] = stack[--sp];
+                    localNumbers[slot] = numbers[sp];
+                }
+                case OpCode.UNDEFINED_VARIABLE -> SpartieRuntime.undefinedVariable((Token) constants[code[ip]]);
+
+                case OpCode.ADD -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] += numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.SUBTRACT -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] -= numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.MULTIPLY -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] *= numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.DIVIDE -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        numbers[sp - 1] /= numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.NEGATE -> {
+                    if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] = -numbers[sp - 1];
+                        ip++;
+                    }
+                    else {
+                        push(stack, numbers, sp - 1, SpartieRuntime.negate((Token) constants[code[ip++]], stack[sp - 1]));
+                    }
+                }
+                case OpCode.NOT -> stack[sp - 1] = !SpartieRuntime.isTrue(stack[sp - 1]);
+                case OpCode.EQUIVALENT, OpCode.NOT_EQUAL -> {
+                    int op = code[ip - 1];
+                    sp--;
+                    boolean equal;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        // Same rules as Double.equals, so NaN equals itself and 0.0 does not equal -0.0
+                        equal = Double.compare(numbers[sp - 1], numbers[sp]) == 0;
+                    }
+                    else {
+                        equal = SpartieRuntime.isEquivalent(box(stack, numbers, sp - 1), box(stack, numbers, sp));
+                    }
+                    stack[sp - 1] = (op == OpCode.EQUIVALENT) == equal;
+                    ip++;
+                }
+                case OpCode.GREATER_THAN -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = numbers[sp - 1] > numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = numbers[sp - 1] >= numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.LESS_THAN -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = numbers[sp - 1] < numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+                case OpCode.LESS_EQUAL -> {
+                    sp--;
+                    if (stack[sp - 1] == NUMBER && stack[sp] == NUMBER) {
+                        stack[sp - 1] = numbers[sp - 1] <= numbers[sp];
+                        ip++;
+                    }
+                    else {
+                        sp = binary(stack, numbers, sp, (Token) constants[code[ip++]]);
+                    }
+                }
+
+                case OpCode.ADD_NUMBER -> {
+                    if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] += numberConstants[code[ip]];
+                        ip += 2;
+                    }
+                    else {
+                        sp = binaryNumber(stack, numbers, sp, numberConstants[code[ip]], (Token) constants[code[ip + 1]]);
+                        ip += 2;
+                    }
+                }
+                case OpCode.SUBTRACT_NUMBER -> {
+                    if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] -= numberConstants[code[ip]];
+                        ip += 2;
+                    }
+                    else {
+                        sp = binaryNumber(stack, numbers, sp, numberConstants[code[ip]], (Token) constants[code[ip + 1]]);
+                        ip += 2;
+                    }
+                }
+                case OpCode.MULTIPLY_NUMBER -> {
+                    if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] *= numberConstants[code[ip]];
+                        ip += 2;
+                    }
+                    else {
+                        sp = binaryNumber(stack, numbers, sp, numberConstants[code[ip]], (Token) constants[code[ip + 1]]);
+                        ip += 2;
+                    }
+                }
+                case OpCode.DIVIDE_NUMBER -> {
+                    if (stack[sp - 1] == NUMBER) {
+                        numbers[sp - 1] /= numberConstants[code[ip]];
+                        ip += 2;
+                    }
+                    else {
+                        sp = binaryNumber(stack, numbers, sp, numberConstants[code[ip]], (Token) constants[code[ip + 1]]);
+                        ip += 2;
+                    }
+                }
+                case OpCode.JUMP_IF_NOT_GREATER -> {
+                    sp -= 2;
+                    boolean result = stack[sp] == NUMBER && stack[sp + 1] == NUMBER
+                            ? numbers[sp] > numbers[sp + 1]
+                            : compare(stack, numbers, sp, (Token) constants[code[ip]]);
+                    ip = result ? ip + 2 : code[ip + 1];
+                }
+                case OpCode.JUMP_IF_NOT_GREATER_EQUAL -> {
+                    sp -= 2;
+                    boolean result = stack[sp] == NUMBER && stack[sp + 1] == NUMBER
+                            ? numbers[sp] >= numbers[sp + 1]
+                            : compare(stack, numbers, sp, (Token) constants[code[ip]]);
+                    ip = result ? ip + 2 : code[ip + 1];
+                }
+                case OpCode.JUMP_IF_NOT_LESS -> {
+                    sp -= 2;
+                    boolean result = stack[sp] == NUMBER && stack[sp + 1] == NUMBER
+                            ? numbers[sp] < numbers[sp + 1]
+                            : compare(stack, numbers, sp, (Token) constants[code[ip]]);
+                    ip = result ? ip + 2 : code[ip + 1];
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL -> {
+                    sp -= 2;
+                    boolean result = stack[sp] == NUMBER && stack[sp + 1] == NUMBER
+                            ? numbers[sp] <= numbers[sp + 1]
+                            : compare(stack, numbers, sp, (Token) constants[code[ip]]);
+                    ip = result ? ip + 2 : code[ip + 1];
+                }
+
+                case OpCode.INCREMENT_LOCAL -> {
+                    int slot = code[ip];
+                    if (locals[slot] == NUMBER) {
+                        localNumbers[slot] += numberConstants[code[ip + 1]];
+                    }
+                    else {
+                        Object result = SpartieRuntime.binary((Token) constants[code[ip + 2]],
+                                box(locals, localNumbers, slot), numberConstants[code[ip + 1]]);
+                        push(locals, localNumbers, slot, result);
+                    }
+                    ip += 3;
+                }
+                case OpCode.ADD_TO_LOCAL -> {
+                    int slot = code[ip];
+                    sp--;
+                    if (locals[slot] == NUMBER && stack[sp] == NUMBER) {
+                        localNumbers[slot] += numbers[sp];
+                    }
+                    else {
+                        Object result = SpartieRuntime.binary((Token) constants[code[ip + 1]],
+                                box(locals, localNumbers, slot), box(stack, numbers, sp));
+                        push(locals, localNumbers, slot, result);
+                    }
+                    ip += 2;
+                }
+                case OpCode.JUMP_IF_NOT_LESS_LOCAL -> {
+                    int slot = code[ip];
+                    boolean result = locals[slot] == NUMBER
+                            ? localNumbers[slot] < numberConstants[code[ip + 1]]
+                            : compareLocal(locals, localNumbers, slot, numberConstants[code[ip + 1]], (Token) constants[code[ip + 2]]);
+                    ip = result ? ip + 4 : code[ip + 3];
+                }
+                case OpCode.JUMP_IF_NOT_LESS_EQUAL_LOCAL -> {
+                    int slot = code[ip];
+                    boolean result = locals[slot] == NUMBER
+                            ? localNumbers[slot] <= numberConstants[code[ip + 1]]
+                            : compareLocal(locals, localNumbers, slot, numberConstants[code[ip + 1]], (Token) constants[code[ip + 2]]);
+                    ip = result ? ip + 4 : code[ip + 3];
+                }
+
+                case OpCode.PRINT -> {
+                    sp--;
+                    if (stack[sp] == NUMBER) {
+                        output.println(numbers[sp]);
+                    }
+                    else {
+                        output.println(stack[sp].toString());
+                    }
+                }
+
+                case OpCode.JUMP -> ip = code[ip];
+                case OpCode.JUMP_IF_FALSE -> ip = SpartieRuntime.isTrue(stack[--sp]) ? ip + 1 : code[ip];
+                case OpCode.JUMP_IF_FALSE_KEEP -> ip = SpartieRuntime.isTrue(stack[sp - 1]) ? ip + 1 : code[ip];
+                case OpCode.JUMP_IF_TRUE_KEEP -> ip = SpartieRuntime.isTrue(stack[sp - 1]) ? code[ip] : ip + 1;
+                case OpCode.HALT -> {
+                    return;
+                }
+                default -> throw new IllegalStateException("Unknown opcode " + code[ip - 1]);
+            }
+        }
+    }
+
+    // Slow path for operators whose operands are not both numbers, sp points at the right operand
+    private static int binary(Object[] stack, double[] numbers, int sp, Token operator) {
+        Object result = SpartieRuntime.binary(operator, box(stack, numbers, sp - 1), box(stack, numbers, sp));
+        push(stack, numbers, sp - 1, result);
+        return sp;
+    }
+
+    // Slow path for an operator with a number operand, the left operand is on top of the stack
+    private static int binaryNumber(Object[] stack, double[] numbers, int sp, double right, Token operator) {
+        Object result = SpartieRuntime.binary(operator, box(stack, numbers, sp - 1), right);
+        push(stack, numbers, sp - 1, result);
+        return sp;
+    }
+
+    // Slow path for a comparison jump whose operands are not both numbers, sp points at the left operand
+    private static boolean compare(Object[] stack, double[] numbers, int sp, Token operator) {
+        return SpartieRuntime.isTrue(SpartieRuntime.binary(operator, box(stack, numbers, sp), box(stack, numbers, sp + 1)));
+    }
+
+    private static boolean compareLocal(Object[] locals, double[] localNumbers, int slot, double right, Token operator) {
+        return SpartieRuntime.isTrue(SpartieRuntime.binary(operator, box(locals, localNumbers, slot), right));
+    }
+
+    private static Object box(Object[] stack, double[] numbers, int index) {
+        if (stack[index] == NUMBER) {
+            return numbers[index];
+        }
+        return stack[index];
+    }
+
+    private static void push(Object[] stack, double[] numbers, int index, Object value) {
+        if (value instanceof Double number) {
+            stack[index] = NUMBER;
+            numbers[index] = number;
+        }
+        else {
+            stack[index] = value;
+        }
+    }
+}
@@ -1,22 +1,76 @@
 import java.util.List;
 
+// The tree is built by the parser, and the optimizer and the resolver then fill in the fields marked as theirs. Only
+// the fields of the tree's shape are final. The ones the resolver fills in are plain fields, safe to share because one
+// thread writes them before the tree is handed to any other, and a shared tree must not be resolved again. While the
+// tree runs, BinaryExpression.node is the one field written, a cache that interpreters on different threads may race
+// on, see there.
 public class Statement {
+    // Line of the statement's keyword, or of its first token for an expression statement
+    public final int line;
+
+    public Statement(int line) {
+        this.line = line;
+    }
+
     static class WhileStatement extends Statement {
-        public Expression condition;
-        public Statement body;
+        public final Expression condition;
+        public final Statement body;
 
-        public WhileStatement(Expression condition, Statement body) {
+        public WhileStatement(int line, Expression condition, Statement body) {
+            super(line);
             this.condition = condition;
             this.body = body;
         }
     }
 
+    static class ForStatement extends Statement {
+        public final Statement initializer;
+        public final Expression condition;
+        public final Expression increment;
+        public final Statement body;
+
+        // Filled in by the SpartieOptimizer
+        public CountedLoop countedLoop = null;
+        public int hoistedCount = 0;
+
+        // Filled in by the SpartieResolver. The initializer's variable and the hoisted values share the loop's scope,
+        // the hoisted values take the first slots. A loop with nothing to keep has no scope and a count of 0.
+        public int slotCount = 0;
+
+        public ForStatement(int line, Statement initializer, Expression condition, Expression increment,
+                Statement body) {
+            super(line);
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+    }
+
+    // A for loop of the form 'for (var i = start; i < bound; i = i + step)' where the body never assigns i and the
+    // bound does not change while the loop runs, so the interpreter can count with a primitive
+    static class CountedLoop {
+        public final VariableStatement counter;
+        public final TokenType comparison;
+        public final Expression bound;
+        public final double step;
+
+        public CountedLoop(VariableStatement counter, TokenType comparison, Expression bound, double step) {
+            this.counter = counter;
+            this.comparison = comparison;
+            this.bound = bound;
+            this.step = step;
+        }
+    }
+
     static class IfStatement extends Statement {
-        public Expression condition;
-        public Statement thenBranch;
-        public Statement elseBranch;
+        public final Expression condition;
+        public final Statement thenBranch;
+        public final Statement elseBranch;
 
-        public IfStatement(Expression condition, Statement thenBranch, Statement elseBranch) {
+        public IfStatement(int line, Expression condition, Statement thenBranch, Statement elseBranch) {
+            super(line);
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
@@ -24,34 +78,73 @@ public class Statement {
     }
 
     static class PrintStatement extends Statement {
-        public Expression expression;
+        public final Expression expression;
 
-        public PrintStatement(Expression expression) {
+        public PrintStatement(int line, Expression expression) {
+            super(line);
             this.expression = expression;
         }
     }
 
     static class BlockStatement extends Statement {
-        public List<Statement> statements;
+        public final List<Statement> statements;
+
+        // Number of variables declared directly in this block, filled in by the SpartieResolver
+        public int slotCount = 0;
 
-        public BlockStatement(List<Statement> statements) {
+        public BlockStatement(int line, List<Statement> statements) {
+            super(line);
             this.statements = statements;
         }
     }
 
     static class ExpressionStatement extends Statement {
-        public Expression expression;
+        public final Expression expression;
 
-        public ExpressionStatement(Expression expression) {
+        public ExpressionStatement(int line, Expression expression) {
+            super(line);
             this.expression = expression;
         }
     }
 
+    // A function, declared only at the top level. It sees its parameters, its own variables and the globals declared
+    // before it.
+    static class FunctionStatement extends Statement {
+        public final Token name;
+        public final List<Token> parameters;
+        public final List<Statement> body;
+
+        // Filled in by the SpartieResolver. The parameters take the first slots of the function's scope.
+        public int slotCount = 0;
+
+        public FunctionStatement(int line, Token name, List<Token> parameters, List<Statement> body) {
+            super(line);
+            this.name = name;
+            this.parameters = parameters;
+            this.body = body;
+        }
+    }
+
+    static class ReturnStatement extends Statement {
+        public final Token keyword;
+        public final Expression value;
+
+        public ReturnStatement(int line, Token keyword, Expression value) {
+            super(line);
+            this.keyword = keyword;
+            this.value = value;
+        }
+    }
+
     static class VariableStatement extends Statement {
-        public Token name;
-        public Expression initializer;
+        public final Token name;
+        public final Expression initializer;
+
+        // Filled in by the SpartieResolver
+        public int slot = -1;
 
-        public VariableStatement(Token name, Expression initializer) {
+        public VariableStatement(int line, Token name, Expression initializer) {
+            super(line);
             this.name = name;
             this.initializer = initializer;
         }
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+// Every token of a program in parallel primitive arrays instead of one Token object each. A token is its type, the
+// range of its text in the source and its line, 13 bytes in all. Text and literal values are read from the source only
+// when the parser asks for the Token, which it does just for the tokens the tree keeps: names, operators and literals.
+public class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int count = 0;
+
+    // Expects to hold the tokens of about length characters of the source
+    TokenBuffer(CharSequence source, int length) {
+        this.source = source;
+
+        // Roughly one token for every eight characters, grown as needed
+        int capacity = Math.max(16, length / 8);
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+    }
+
+    void add(TokenType type, int start, int length, int line) {
+        if (count == types.length) {
+            int capacity = types.length * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        types[count] = (byte) type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    public int line(int index) {
+        return lines[index];
+    }
+
+    // Builds the Token, with the same text and literal the scanner would have given it
+    public Token token(int index) {
+        return SpartieScanner.token(source, type(index), starts[index], starts[index] + lengths[index], lines[index]);
+    }
+}
@@ -0,0 +1,163 @@
+import java.util.List;
+
+// The tokens as the parser consumes them. The parser only ever looks at the current token and the one before it, so
+// the tokens do not have to be held in one list.
+interface TokenStream {
+    // Type of the current token, without creating its Token
+    TokenType peekType();
+
+    Token peek();
+
+    Token previous();
+
+    // Lines of the current and the previous token, without creating their Tokens
+    int peekLine();
+
+    int previousLine();
+
+    // Move past the current token. Never called on EOF.
+    void advance();
+
+    // Every token of the program scanned up front
+    class Listed implements TokenStream {
+        private final List<Token> tokens;
+        private int current = 0;
+
+        Listed(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return tokens.get(current).type;
+        }
+
+        @Override
+        public Token peek() {
+            return tokens.get(current);
+        }
+
+        @Override
+        public Token previous() {
+            return tokens.get(current - 1);
+        }
+
+        @Override
+        public int peekLine() {
+            return tokens.get(current).line;
+        }
+
+        @Override
+        public int previousLine() {
+            return tokens.get(current - 1).line;
+        }
+
+        @Override
+        public void advance() {
+            current++;
+        }
+    }
+
+    // Every token of the program scanned up front into a TokenBuffer. Only the tokens the parser keeps are ever
+    // created as Token objects.
+    class Buffered implements TokenStream {
+        private final TokenBuffer tokens;
+        private int current = 0;
+
+        Buffered(TokenBuffer tokens) {
+            this.tokens = tokens;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return tokens.type(current);
+        }
+
+        @Override
+        public Token peek() {
+            return tokens.token(current);
+        }
+
+        @Override
+        public Token previous() {
+            return tokens.token(current - 1);
+        }
+
+        @Override
+        public int peekLine() {
+            return tokens.line(current);
+        }
+
+        @Override
+        public int previousLine() {
+            return tokens.line(current - 1);
+        }
+
+        @Override
+        public void advance() {
+            current++;
+        }
+    }
+
+    // Tokens pulled from the scanner as the parser reaches them, held in a small ring. Memory use does not depend on
+    // the size of the program.
+    class Streamed implements TokenStream {
+        private static final int CAPACITY = 64;
+        private static final int MASK = CAPACITY - 1;
+
+        private final SpartieScanner scanner;
+        private final Token[] ring = new Token[CAPACITY];
+
+        // Positions in the whole token sequence, a token lives at its position modulo the capacity
+        private long current = 0;
+        private long end = 0;
+        private boolean scannedEof = false;
+
+        Streamed(SpartieScanner scanner) {
+            this.scanner = scanner;
+        }
+
+        @Override
+        public TokenType peekType() {
+            return peek().type;
+        }
+
+        @Override
+        public Token peek() {
+            if (current == end) {
+                fill();
+            }
+            return ring[(int) (current & MASK)];
+        }
+
+        @Override
+        public Token previous() {
+            return ring[(int) ((current - 1) & MASK)];
+        }
+
+        @Override
+        public int peekLine() {
+            return peek().line;
+        }
+
+        @Override
+        public int previousLine() {
+            return previous().line;
+        }
+
+        @Override
+        public void advance() {
+            current++;
+        }
+
+        // Scan ahead in one go until the ring is full, keeping the slot of the previous token
+        private void fill() {
+            while (end < current + CAPACITY - 1 && !scannedEof) {
+                Token token = scanner.next();
+                ring[(int) (end & MASK)] = token;
+                end++;
+                scannedEof = token.type == TokenType.EOF;
+            }
+        }
+    }
+}
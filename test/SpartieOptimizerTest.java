@@ -0,0 +1,54 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+class SpartieOptimizerTest {
+    @Test
+    void globalDeclaredAgainIsNotPropagatedIntoAFunction() {
+        String source = "var a = 1; fun f() { return a; } var a = 2; print f();";
+
+        assertEquals("2.0\n", run(source, false));
+        assertEquals("2.0\n", run(source, true));
+    }
+
+    @Test
+    void globalReadByAFunctionCalledBeforeItsDeclarationIsNotPropagated() {
+        String source = "print f() == null; var a = 1; fun f() { return a; } print f();";
+
+        assertEquals("true\n1.0\n", run(source, false));
+        assertEquals("true\n1.0\n", run(source, true));
+    }
+
+    @Test
+    void globalDeclaredOnceIsStillPropagated() {
+        List<Statement> statements = new SpartieOptimizer().optimize(parse("var a = 1; print a + 1;"));
+
+        assertEquals("(var a 1.0)\n(print 2.0)\n", new AstPrinter().print(statements));
+    }
+
+    private static List<Statement> parse(String source) {
+        return new SpartieParser(new SpartieScanner(source).scanBuffer()).parse();
+    }
+
+    private static String run(String source, boolean optimize) {
+        List<Statement> statements = parse(source);
+        if (optimize) {
+            statements = new SpartieOptimizer().optimize(statements);
+        }
+        new SpartieResolver().resolve(statements);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BufferedOutputSink sink = new BufferedOutputSink(output, StandardCharsets.UTF_8);
+        SpartieRuntime.setThreadOutput(sink);
+        try {
+            new SpartieInterpreter().run(statements);
+        } finally {
+            SpartieRuntime.setThreadOutput(null);
+            sink.flush();
+        }
+        return output.toString(StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,93 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.StringWriter;
+import java.util.List;
+import javax.script.Bindings;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+import javax.script.SimpleScriptContext;
+import org.junit.jupiter.api.Test;
+
+class SpartieScriptEngineTest {
+    private final SpartieScriptEngine engine = (SpartieScriptEngine) new SpartieScriptEngineFactory().getScriptEngine();
+
+    @Test
+    void sharedGlobalsAreOneStorePerScript() throws ScriptException {
+        CompiledScript script = engine.compile("n = n + 1; var last = n;");
+        List<Bindings> bindings = List.of(bindings(0), bindings(0));
+
+        // The variable the script declares is written back into the bindings after the first run, which must not
+        // give the later runs a store of their own
+        for (int round = 0; round < 2; round++) {
+            for (Bindings scope : bindings) {
+                script.eval(context(scope, true));
+            }
+        }
+
+        assertEquals(4.0, bindings.get(1).get("n"));
+        assertEquals(4.0, bindings.get(1).get("last"));
+        assertEquals(3.0, bindings.get(0).get("n"));
+    }
+
+    @Test
+    void globalsAreOwnedByEachRunByDefault() throws ScriptException {
+        CompiledScript script = engine.compile("n = n + 1; var last = n;");
+        List<Bindings> bindings = List.of(bindings(0), bindings(0));
+
+        for (int round = 0; round < 2; round++) {
+            for (Bindings scope : bindings) {
+                script.eval(context(scope, false));
+            }
+        }
+
+        for (Bindings scope : bindings) {
+            assertEquals(2.0, scope.get("n"));
+            assertEquals(2.0, scope.get("last"));
+        }
+    }
+
+    @Test
+    void variablesAreDeclaredWhereMainDeclaresThem() throws ScriptException {
+        CompiledScript assignsEarly = engine.compile("a = 1; var a = 2;");
+        assertThrows(ScriptException.class, () -> assignsEarly.eval(context(new SimpleBindings(), false)));
+
+        StringWriter writer = new StringWriter();
+        ScriptContext context = context(new SimpleBindings(), false);
+        context.setWriter(writer);
+
+        engine.compile("print a == null; var a = 2; print a;").eval(context);
+
+        String newline = System.lineSeparator();
+        assertEquals("true" + newline + "2.0" + newline, writer.toString());
+    }
+
+    @Test
+    void printWritesToTheContext() throws ScriptException {
+        StringWriter writer = new StringWriter();
+        ScriptContext context = context(bindings(41), false);
+        context.setWriter(writer);
+
+        engine.compile("print n + 1;").eval(context);
+
+        assertEquals("42.0" + System.lineSeparator(), writer.toString());
+    }
+
+    private static Bindings bindings(int n) {
+        Bindings bindings = new SimpleBindings();
+        bindings.put("n", n);
+        return bindings;
+    }
+
+    private static ScriptContext context(Bindings bindings, boolean sharedGlobals) {
+        ScriptContext context = new SimpleScriptContext();
+        context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+        context.setWriter(new StringWriter());
+        if (sharedGlobals) {
+            context.setAttribute(SpartieScriptEngine.SHARED_GLOBALS, true, ScriptContext.ENGINE_SCOPE);
+        }
+        return context;
+    }
+}